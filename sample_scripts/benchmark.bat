@@ -0,0 +1,5 @@
+rem run the benchmark suite, see Benchmarks for the benchmarks, e.g. "benchmark.bat technique" for the techniques only
+
+java -cp ..\jisudokusolver.jar org.gu.junyang.solver.sudoku.Benchmarks %*
+
+pause
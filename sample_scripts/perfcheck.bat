@@ -0,0 +1,6 @@
+rem performance regression check, the first run records the baseline, the later runs compare with it
+rem "perfcheck.bat --record" to record a new baseline
+
+java -cp ..\jisudokusolver.jar org.gu.junyang.solver.sudoku.PerformanceCheck %*
+
+pause
@@ -11,7 +11,7 @@ rem multiple medium puzzles
 java -jar ..\jisudokusolver.jar --batch -c --noguess < ../sample_puzzles/medium
 
 rem bad puzzles
-java -jar ..\jisudokusolver.jar --batch ../sample_puzzles/bad_puzzles
+java -jar ..\jisudokusolver.jar --batch --backbone --clues ../sample_puzzles/bad_puzzles
 
 rem solve some hard puzzles from Wiki page
 
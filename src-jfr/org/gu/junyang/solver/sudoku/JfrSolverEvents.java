@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the Java Flight Recorder events, only used through SolverEvents, which loads it by reflection.
+ *
+ * it is in the src-jfr source root, built with --release 11, as jdk.jfr is not in the Java 8 API
+ * the rest of the project is built against; see build.xml. on a Java 8 runtime it fails to load,
+ * and SolverEvents records nothing.
+ *
+ * the events are in the "iSudokuSolver" category:
+ * 	org.gu.junyang.solver.sudoku.Operation	a solve, reduce, generate or fix, with the nodes and guesses
+ * 	org.gu.junyang.solver.sudoku.Branch		a trial and error branch, with the nodes under it
+ * 	org.gu.junyang.solver.sudoku.Pass		a technique pass, with the candidates it eliminated
+ * the puzzle hash ties the events of a puzzle together, see SolverEvents.puzzleHash().
+ *
+ * e.g. java -XX:StartFlightRecording=filename=solve.jfr ... Cli --batch hard
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+final class JfrSolverEvents implements SolverEvents.Recorder {
+
+	@Name("org.gu.junyang.solver.sudoku.Operation")
+	@Label("Sudoku Operation")
+	@Category("iSudokuSolver")
+	static class OperationEvent extends Event {
+		@Label("Operation")
+		String operation;
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Result Puzzle Hash")
+		long resultHash;
+		@Label("Level")
+		int level;
+		// e.g. the SolveResult of a solve, the reductions of a reduce, the puzzles tried of a generate with capability
+		@Label("Outcome")
+		String outcome;
+		@Label("Limit Reached")
+		String limit;
+		@Label("Nodes")
+		long nodes;
+		@Label("Guesses")
+		long guesses;
+	}
+
+	@Name("org.gu.junyang.solver.sudoku.Branch")
+	@Label("Trial and Error Branch")
+	@Category("iSudokuSolver")
+	@StackTrace(false)
+	static class BranchEvent extends Event {
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Depth")
+		int depth;
+		@Label("Row")
+		int row;
+		@Label("Column")
+		int col;
+		@Label("Value")
+		int value;
+		@Label("Nodes")
+		long nodes;
+		@Label("Solutions")
+		int solutions;
+	}
+
+	@Name("org.gu.junyang.solver.sudoku.Pass")
+	@Label("Technique Pass")
+	@Category("iSudokuSolver")
+	@StackTrace(false)
+	static class PassEvent extends Event {
+		@Label("Technique")
+		String technique;
+		@Label("Puzzle Hash")
+		long puzzleHash;
+		@Label("Progress")
+		boolean progress;
+		@Label("Eliminations")
+		long eliminations;
+	}
+
+	/**
+	 * keep SolverEvents.recording up to date
+	 */
+	JfrSolverEvents() {
+		// the event classes are registered when first used, i.e. when recording,
+		// registering them ahead costs a lot of the startup
+
+		// called back at once if the recorder is already initialized, e.g. by -XX:StartFlightRecording
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recorderInitialized(FlightRecorder recorder) {
+				update(recorder);
+			}
+
+			@Override
+			public void recordingStateChanged(Recording recording) {
+				update(FlightRecorder.getFlightRecorder());
+			}
+		});
+	}
+
+	private static void update(FlightRecorder recorder) {
+		boolean running = false;
+		for (Recording recording : recorder.getRecordings()) {
+			if (recording.getState() == RecordingState.RUNNING)
+				running = true;
+		}
+		SolverEvents.recording = running;
+	}
+
+	///////////////////////////////////
+
+	public Object beginOperation(String operation, long puzzleHash) {
+		OperationEvent event = new OperationEvent();
+		event.operation = operation;
+		event.puzzleHash = puzzleHash;
+		event.begin();
+		return event;
+	}
+
+	public void endOperation(Object o, long resultHash, int level, String outcome, String limit,
+			long nodes, long guesses) {
+		OperationEvent event = (OperationEvent) o;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.resultHash = resultHash;
+		event.level = level;
+		event.outcome = outcome;
+		event.limit = limit;
+		event.nodes = nodes;
+		event.guesses = guesses;
+		event.commit();
+	}
+
+	public Object beginBranch() {
+		BranchEvent event = new BranchEvent();
+		event.begin();
+		return event;
+	}
+
+	public void endBranch(Object o, long puzzleHash, int depth, int row, int col, int value,
+			long nodes, int solutions) {
+		BranchEvent event = (BranchEvent) o;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.puzzleHash = puzzleHash;
+		event.depth = depth;
+		event.row = row + 1;
+		event.col = col + 1;
+		event.value = value;
+		event.nodes = nodes;
+		event.solutions = solutions;
+		event.commit();
+	}
+
+	public Object beginPass() {
+		PassEvent event = new PassEvent();
+		event.begin();
+		return event;
+	}
+
+	public void endPass(Object o, String technique, long puzzleHash, boolean progress, long eliminations) {
+		PassEvent event = (PassEvent) o;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.technique = technique;
+		event.puzzleHash = puzzleHash;
+		event.progress = progress;
+		event.eliminations = eliminations;
+		event.commit();
+	}
+
+}
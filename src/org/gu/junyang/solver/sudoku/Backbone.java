@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the backbone of a puzzle: the cells of the same value in all its solutions, without enumerating the solutions.
+ *
+ * a solution is found first, every cell not given may be of the backbone, of its value in that solution.
+ * then for each cell that still may be, the FastSolver is asked for a solution with the cell of another value:
+ * if there is none, the cell is of the backbone; if there is one, every cell it differs in is not,
+ * so a solution found often rules out many cells at once.
+ * it is a solve per cell at most, instead of one per solution, which may be millions for a puzzle of few clues.
+ *
+ * the given cells are of the backbone. for a puzzle of a unique solution, every cell is.
+ *
+ * usage:
+ * 	Backbone backbone = Backbone.of(puzzle);
+ * 	if (backbone.getSolutionCount() > 1)
+ * 		... backbone.getPuzzle(), backbone.getFreeCount() ...
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+public class Backbone {
+
+	// the values of the backbone cells, by cell index, 0 for a cell not of the backbone
+	final int [] values = new int[Board.TOTAL_CELLS];
+
+	// 0, 1, or 2 for more than one
+	int solutionCount;
+
+	// a solution, null if none
+	int [] solution;
+
+	// a second solution, of another value in the first free cell, null if none
+	int [] otherSolution;
+
+	// the solves done, for the stats
+	int solves;
+
+	///////////////////////////////////
+
+	private Backbone() {
+	}
+
+	public static Backbone of(Puzzle puzzle) {
+		return of(puzzle, null);
+	}
+
+	/**
+	 * @param budget	e.g. of the request, null for none
+	 * @throws SolveLimitException	if a limit of the budget is reached
+	 */
+	public static Backbone of(Puzzle puzzle, SolveBudget budget) {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setPuzzle(puzzle);
+		return of(fastSolver.getMasks().clone(), budget);
+	}
+
+	/**
+	 * @param masks	the masks of the cells, as of FastSolver, e.g. of a board with candidates
+	 */
+	public static Backbone of(int [] masks) {
+		return of(masks, null);
+	}
+
+	/**
+	 * @param masks	the masks of the cells, as of FastSolver, e.g. of a board with candidates
+	 * @param budget	null for none
+	 * @throws SolveLimitException	if a limit of the budget is reached
+	 */
+	public static Backbone of(int [] masks, SolveBudget budget) {
+		Backbone backbone = new Backbone();
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setBudget(budget);
+		fastSolver.setMasks(masks);
+		backbone.solves++;
+		if (fastSolver.countSolutions(1) == 0)
+			return backbone;
+
+		int [] solution = fastSolver.getSolution();
+		backbone.solution = solution;
+		backbone.solutionCount = 1;
+		System.arraycopy(solution, 0, backbone.values, 0, Board.TOTAL_CELLS);
+
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (backbone.values[i] == 0 || (masks[i] & (masks[i] - 1)) == 0)
+				continue;
+
+			if (budget != null)
+				budget.check();
+
+			// a solution of another value in the cell
+			int [] others = masks.clone();
+			others[i] &= ~(1 << (solution[i] - 1));
+			fastSolver.setMasks(others);
+			backbone.solves++;
+			if (fastSolver.countSolutions(1) == 0)
+				continue;
+
+			int [] other = fastSolver.getSolution();
+			if (backbone.otherSolution == null) {
+				backbone.otherSolution = other;
+				backbone.solutionCount = 2;
+			}
+			for (int j=i; j<Board.TOTAL_CELLS; j++) {
+				if (other[j] != solution[j])
+					backbone.values[j] = 0;
+			}
+		}
+		return backbone;
+	}
+
+	///////////////////////////////////
+
+	public boolean isFixed(int row, int col) {
+		return values[row * 9 + col] != 0;
+	}
+
+	/**
+	 * @return	the value of the cell in all the solutions, 0 if it is not of the backbone
+	 */
+	public int getValue(int row, int col) {
+		return values[row * 9 + col];
+	}
+
+	/**
+	 * the cells of the backbone, the given ones included
+	 */
+	public int getFixedCount() {
+		int count = 0;
+		for (int value : values) {
+			if (value != 0)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * the cells not of the backbone, the ones of different values in different solutions
+	 */
+	public int getFreeCount() {
+		return solutionCount == 0 ? 0 : Board.TOTAL_CELLS - getFixedCount();
+	}
+
+	/**
+	 * the backbone as a puzzle, the given cells and the cells deduced to be of a single value
+	 */
+	public Puzzle getPuzzle() {
+		Puzzle puzzle = new Puzzle();
+		for (int i=0; i<Board.TOTAL_CELLS; i++)
+			puzzle.values[i / 9][i % 9] = values[i];
+		return puzzle;
+	}
+
+	/**
+	 * 0, 1, or 2 for more than one
+	 */
+	public int getSolutionCount() {
+		return solutionCount;
+	}
+
+	/**
+	 * the values of a solution, by cell index; null if none
+	 */
+	public int [] getSolution() {
+		return solution;
+	}
+
+	/**
+	 * the values of a second solution, by cell index; null if the solution is unique
+	 */
+	public int [] getOtherSolution() {
+		return otherSolution;
+	}
+
+	public int getSolves() {
+		return solves;
+	}
+
+}
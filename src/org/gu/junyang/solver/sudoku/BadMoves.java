@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the candidates of a board that are bad moves, a mask of each cell, so a move is looked up in O(1).
+ *
+ * if the board has a unique solution, a candidate is bad if it is not the value of the solution.
+ * if it has no solution, every candidate is bad.
+ * if it has more than one, e.g. a board with candidates removed by the user, or a puzzle being designed,
+ * a candidate is bad if setting it gives a contradiction by propagation, tried for each candidate,
+ * the cells split among the workers; the values of the solution found are good, so they are not tried.
+ *
+ * the masks given are those of FastSolver, bit v-1 for the value v.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class BadMoves {
+
+	// the bad candidates of each cell, by cell index
+	final int [] badMasks = new int[Board.TOTAL_CELLS];
+
+	// 0, 1, or 2 for more than one
+	int solutionCount;
+
+	// the first solution found, null if none
+	int [] solution;
+
+	///////////////////////////////////
+
+	private BadMoves() {
+	}
+
+	/**
+	 * the bad moves of a board of a known unique solution
+	 */
+	public static BadMoves ofSolution(int [] masks, int [] solution) {
+		BadMoves badMoves = new BadMoves();
+		badMoves.solutionCount = 1;
+		badMoves.solution = solution;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if ((masks[i] & (masks[i] - 1)) != 0)
+				badMoves.badMasks[i] = masks[i] & ~(1 << (solution[i] - 1));
+		}
+		return badMoves;
+	}
+
+	/**
+	 * @param workers	to probe the candidates in parallel, null to probe them on this thread
+	 * @param parts		the number of tasks the cells are split into, e.g. the number of workers
+	 * @throws InterruptedException	if the thread is interrupted, e.g. the check cancelled
+	 */
+	public static BadMoves find(int [] masks, ExecutorService workers, int parts)
+			throws InterruptedException, ExecutionException {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setMasks(masks);
+		int solutionCount = fastSolver.countSolutions(2);
+		if (fastSolver.isInterrupted())
+			throw new InterruptedException();
+		if (solutionCount == 1)
+			return ofSolution(masks, fastSolver.getSolution());
+
+		BadMoves badMoves = new BadMoves();
+		badMoves.solutionCount = solutionCount;
+		if (solutionCount == 0) {
+			for (int i=0; i<Board.TOTAL_CELLS; i++) {
+				if ((masks[i] & (masks[i] - 1)) != 0)
+					badMoves.badMasks[i] = masks[i];
+			}
+			return badMoves;
+		}
+		final int [] solution = fastSolver.getSolution();
+		badMoves.solution = solution;
+
+		// the candidates removed by the propagation are bad, the rest are probed
+		fastSolver.setMasks(masks);
+		fastSolver.propagate();
+		final int [] propagated = fastSolver.getMasks().clone();
+		final ArrayList<Integer> cells = new ArrayList<Integer>();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if ((masks[i] & (masks[i] - 1)) == 0)
+				continue;
+			badMoves.badMasks[i] = masks[i] & ~propagated[i];
+			if ((propagated[i] & (propagated[i] - 1)) != 0)
+				cells.add(i);
+		}
+
+		if (workers == null) {
+			addBadMasks(badMoves.badMasks, probe(propagated, solution, cells, 0, 1));
+			return badMoves;
+		}
+
+		parts = Math.max(1, Math.min(parts, cells.size()));
+		ArrayList<Callable<int []>> tasks = new ArrayList<Callable<int []>>();
+		for (int part=0; part<parts; part++) {
+			final int first = part;
+			final int step = parts;
+			tasks.add(new Callable<int []>() {
+				public int [] call() throws InterruptedException {
+					return probe(propagated, solution, cells, first, step);
+				}
+			});
+		}
+
+		ArrayList<Future<int []>> futures = new ArrayList<Future<int []>>();
+		try {
+			for (Callable<int []> task : tasks)
+				futures.add(workers.submit(task));
+			for (Future<int []> future : futures)
+				addBadMasks(badMoves.badMasks, future.get());
+		} finally {
+			for (Future<int []> future : futures)
+				future.cancel(true);
+		}
+		return badMoves;
+	}
+
+	///////////////////////////////////
+
+	public boolean isBad(int row, int col, int value) {
+		return (badMasks[row * 9 + col] & (1 << (value - 1))) != 0;
+	}
+
+	/**
+	 * the bad candidates of a cell, bit v-1 for the value v
+	 */
+	public int getBadMask(int row, int col) {
+		return badMasks[row * 9 + col];
+	}
+
+	/**
+	 * 0, 1, or 2 for more than one
+	 */
+	public int getSolutionCount() {
+		return solutionCount;
+	}
+
+	/**
+	 * the values of the unique solution, or of a solution if there are more, by cell index; null if none
+	 */
+	public int [] getSolution() {
+		return solution;
+	}
+
+	///////////////////////////////////
+
+	// probe the candidates of the cells first, first + step, ...
+	private static int [] probe(int [] masks, int [] solution, ArrayList<Integer> cells, int first, int step)
+			throws InterruptedException {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setMasks(masks);
+		int [] badMasks = new int[Board.TOTAL_CELLS];
+		for (int k=first; k<cells.size(); k+=step) {
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedException();
+			int cell = cells.get(k);
+			for (int rest = masks[cell]; rest != 0; rest &= rest - 1) {
+				int value = Integer.numberOfTrailingZeros(rest) + 1;
+				if (value != solution[cell] && !fastSolver.probe(cell, value))
+					badMasks[cell] |= 1 << (value - 1);
+			}
+		}
+		return badMasks;
+	}
+
+	private static void addBadMasks(int [] badMasks, int [] o) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++)
+			badMasks[i] |= o[i];
+	}
+
+}
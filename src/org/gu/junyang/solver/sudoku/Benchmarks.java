@@ -0,0 +1,327 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the benchmark suite, over the sample puzzles, see BenchmarkRunner for what is measured.
+ *
+ * the benchmarks, by name:
+ * 	solve.<solver>.<file>	solve all the puzzles of a file, by Solver and SolverNonGreedy
+ * 	technique.<technique>	a pass of a technique on its own, on the boards of the sample puzzles after cross elimination;
+ * 		technique.restore is the board restore done before each pass, not measured in the others
+ * 	board.copy, board.serialize, board.deserialize
+ * 	parse.reader, parse.scanner, parse.codec	read a puzzle, by PuzzleReader, Puzzle(String), PuzzleCodec
+ * 	isSolvable, reduce	a puzzle of the hard file
+ * 	generate	a puzzle, with the seeds 1 to 16 in turn
+ *
+ * usage: [options] [name_filter]
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.gu.junyang.solver.sudoku.SolveStats.Technique;
+import org.gu.junyang.utilities.BenchmarkRunner;
+import org.gu.junyang.utilities.MessagePoster;
+
+public class Benchmarks {
+
+	static final String [] SOLVE_FILES = { "medium", "hard", "wikiHard.txt", "xwing-row.txt", "xwing-col.txt" };
+	static final String [] SOLVER_CLASS_NAMES = { SolverFactory.SolverDefaultClassName, SolverFactory.SolverNonGreedyClassName };
+
+	static final int GENERATE_SEEDS = 16;
+
+	String puzzleDir = "../sample_puzzles";
+	String filter = null;
+	boolean list = false;
+
+	BenchmarkRunner runner = new BenchmarkRunner();
+
+	static final MessagePoster quiet = new MessagePoster() {
+		public void PostMessage(String message) {
+		}
+	};
+
+	///////////////////////////////////
+
+	public static void main(String [] args) throws Exception
+	{
+		// the solvers log at info level for every solve
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		Benchmarks benchmarks = new Benchmarks();
+
+		benchmarks.execute(args);
+	}
+
+	void PrintHelp()
+	{
+		System.err.println("usage: [options] [name_filter]");
+		System.err.println("\tname_filter: a regular expression, only run the benchmarks of names containing a match");
+		System.err.println("\t--dir directory: of the sample puzzles, default is ../sample_puzzles");
+		System.err.println("\t--warmup n: warmup iterations, default is 3");
+		System.err.println("\t--iterations n: measurement iterations, default is 5");
+		System.err.println("\t--time milliseconds: of an iteration, default is 1000");
+		System.err.println("\t--list: list the benchmarks");
+		System.exit(1);
+	}
+
+	void ParseArguments(String [] args)
+	{
+		for (int i=0; i<args.length; i++)
+		{
+			String s = args[i];
+			if (i+1 < args.length && s.equals("--dir")) {
+				puzzleDir = args[++i];
+			} else if (i+1 < args.length && s.equals("--warmup")) {
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if (i+1 < args.length && s.equals("--iterations")) {
+				runner.setIterations(Integer.parseInt(args[++i]));
+			} else if (i+1 < args.length && s.equals("--time")) {
+				runner.setIterationMillis(Long.parseLong(args[++i]));
+			} else if (s.equals("--list")) {
+				list = true;
+			} else if (s.startsWith("-")) {
+				PrintHelp();
+			} else
+				filter = s;
+		}
+	}
+
+	private void execute(String[] args) throws Exception {
+		ParseArguments(args);
+
+		addBenchmarks(runner);
+
+		if (list) {
+			for (String name : runner.getNames())
+				System.out.println(name);
+			return;
+		}
+
+		System.err.println("java " + System.getProperty("java.version") + ", " + System.getProperty("java.vm.name")
+				+ ", processors: " + Runtime.getRuntime().availableProcessors());
+		runner.run(filter, System.out);
+	}
+
+	///////////////////////////////////
+
+	/**
+	 * add the suite to a runner
+	 */
+	void addBenchmarks(BenchmarkRunner runner) throws IOException {
+		for (String fileName : SOLVE_FILES) {
+			for (String solverClassName : SOLVER_CLASS_NAMES)
+				addSolve(runner, solverClassName, fileName);
+		}
+
+		addTechniques(runner);
+		addBoard(runner);
+		addParse(runner);
+		addSudoku(runner);
+	}
+
+	private void addSolve(BenchmarkRunner runner, String solverClassName, String fileName) throws IOException {
+		final ArrayList<Puzzle> puzzles = readPuzzles(fileName);
+		final Sudoku sudoku = new Sudoku();
+		sudoku.setSolverFactory(SolverFactory.newInstance(solverClassName));
+		sudoku.setUsePooledSolver(true);
+		sudoku.setRandomSearch(false);
+
+		String solverName = solverClassName.substring(solverClassName.lastIndexOf('.') + 1);
+		runner.add("solve." + solverName + "." + fileName, new BenchmarkRunner.Task() {
+			public Object run() {
+				int solved = 0;
+				for (Puzzle puzzle : puzzles) {
+					if (sudoku.solve(puzzle) == Sudoku.SolveResult.SOLVED)
+						solved++;
+				}
+				return solved;
+			}
+		});
+	}
+
+	private void addTechniques(BenchmarkRunner runner) throws IOException {
+		// the boards before and after the cross elimination
+		final ArrayList<byte[]> puzzleBoards = new ArrayList<byte[]>();
+		final ArrayList<byte[]> eliminatedBoards = new ArrayList<byte[]>();
+		for (String fileName : SOLVE_FILES) {
+			for (Puzzle puzzle : readPuzzles(fileName)) {
+				Solver solver = new Solver();
+				solver.setBoard(new Board(puzzle));
+				puzzleBoards.add(solver.serializeToByteArray());
+				solver.CrossEliminateAll();
+				eliminatedBoards.add(solver.serializeToByteArray());
+			}
+		}
+
+		final Solver solver = new Solver();
+
+		runner.add("technique.restore", new BenchmarkRunner.Task() {
+			int idx = 0;
+			public Object run() {
+				solver.deserializeFromByteArray(eliminatedBoards.get(idx++ % eliminatedBoards.size()));
+				return solver.unknowns;
+			}
+		});
+
+		for (final Technique technique : Technique.values()) {
+			if (technique == Technique.TRIAL_AND_ERROR)
+				continue;
+			final ArrayList<byte[]> boards = technique == Technique.CROSS_ELIMINATION ? puzzleBoards : eliminatedBoards;
+
+			runner.add("technique." + technique, new BenchmarkRunner.Task() {
+				int idx = 0;
+				@Override
+				public void setup() {
+					solver.deserializeFromByteArray(boards.get(idx++ % boards.size()));
+				}
+				public Object run() {
+					return solver.applyTechnique(technique);
+				}
+			});
+		}
+	}
+
+	private void addBoard(BenchmarkRunner runner) throws IOException {
+		final Board board = new Board(readPuzzles("hard").get(0));
+		final byte [] ba = board.serializeToByteArray();
+
+		runner.add("board.copy", new BenchmarkRunner.Task() {
+			public Object run() {
+				return new Board(board);
+			}
+		});
+
+		runner.add("board.serialize", new BenchmarkRunner.Task() {
+			public Object run() {
+				return board.serializeToByteArray();
+			}
+		});
+
+		final Board target = new Board();
+		runner.add("board.deserialize", new BenchmarkRunner.Task() {
+			public Object run() {
+				target.deserializeFromByteArray(ba);
+				return target.unknowns;
+			}
+		});
+	}
+
+	private void addParse(BenchmarkRunner runner) throws IOException {
+		final byte [] fileBytes = Files.readAllBytes(Paths.get(puzzleDir, "hard"));
+
+		final ArrayList<String> puzzleStrings = new ArrayList<String>();
+		final ArrayList<byte[]> puzzleCodes = new ArrayList<byte[]>();
+		for (Puzzle puzzle : readPuzzles("hard")) {
+			puzzleStrings.add(puzzle.toString());
+			puzzleCodes.add(PuzzleCodec.encodePuzzle(new Board(puzzle)));
+		}
+
+		// a named puzzle at a time
+		runner.add("parse.reader", new BenchmarkRunner.Task() {
+			PuzzleReader reader;
+			@Override
+			public void setup() throws IOException {
+				if (reader == null || !reader.skipWhitespace())
+					reader = new PuzzleReader(ByteBuffer.wrap(fileBytes));
+			}
+			public Object run() throws Exception {
+				Board board = new Board();
+				reader.readName();
+				reader.read(board);
+				return board;
+			}
+		});
+
+		runner.add("parse.scanner", new BenchmarkRunner.Task() {
+			int idx = 0;
+			public Object run() throws Exception {
+				return new Puzzle(puzzleStrings.get(idx++ % puzzleStrings.size()));
+			}
+		});
+
+		runner.add("parse.codec", new BenchmarkRunner.Task() {
+			int idx = 0;
+			public Object run() {
+				return PuzzleCodec.decodePuzzle(puzzleCodes.get(idx++ % puzzleCodes.size()));
+			}
+		});
+	}
+
+	private void addSudoku(BenchmarkRunner runner) throws IOException {
+		final ArrayList<Puzzle> puzzles = readPuzzles("hard");
+		final Sudoku sudoku = new Sudoku();
+		sudoku.setUsePooledSolver(true);
+		sudoku.setUseRandomSeed(true);
+
+		runner.add("isSolvable", new BenchmarkRunner.Task() {
+			int idx = 0;
+			public Object run() throws Exception {
+				return sudoku.isSolvable(puzzles.get(idx++ % puzzles.size()));
+			}
+		});
+
+		runner.add("reduce", new BenchmarkRunner.Task() {
+			int idx = 0;
+			@Override
+			public void setup() {
+				sudoku.setRandomSeed(1);
+			}
+			public Object run() throws Exception {
+				return sudoku.reduce(puzzles.get(idx++ % puzzles.size()));
+			}
+		});
+
+		runner.add("generate", new BenchmarkRunner.Task() {
+			int seed = 0;
+			@Override
+			public void setup() {
+				sudoku.setRandomSeed(seed++ % GENERATE_SEEDS + 1);
+			}
+			public Object run() throws Exception {
+				return sudoku.generatePuzzle(quiet);
+			}
+		});
+	}
+
+	///////////////////////////////////
+
+	ArrayList<Puzzle> readPuzzles(String fileName) throws IOException {
+		// the xwing samples are single puzzles, the others are in the named format of --batch
+		boolean named = !fileName.startsWith("xwing-");
+		PuzzleCorpus corpus = new PuzzleCorpus(Paths.get(puzzleDir, fileName).toString(), named);
+		ArrayList<Puzzle> puzzles = new ArrayList<Puzzle>();
+		try {
+			for (long i=0; i<corpus.size(); i++)
+				puzzles.add(corpus.get(i).toPuzzle());
+		} finally {
+			corpus.close();
+		}
+		return puzzles;
+	}
+
+}
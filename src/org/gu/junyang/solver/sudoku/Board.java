@@ -62,6 +62,18 @@ public class Board implements Serializable {
     // a list structure for easier addressing (than iterator)
     CellList validCellLists[];
 
+    // the incremental contradiction check, derived from the cells, kept up by setValue(), removeCandidate()
+    // and reset(), and recounted when the cells are set otherwise:
+    // the cells of each set where a value is known or a candidate, by set and value - 1,
+    // the known values of each set, bit v for the value v,
+    // and the first contradiction found, null if none
+    transient int valuePlaces[][];
+    transient int knownValues[];
+    transient String contradiction;
+
+    // the full sanityCheck() at each contradiction check too, in the debug mode of assertions enabled (java -ea)
+    static final boolean FULL_SANITY_CHECK = assertionsEnabled();
+
     ////////////////////////////////////////
     public class BoardException extends Exception {
 
@@ -105,6 +117,7 @@ public class Board implements Serializable {
                 }
             }
         }
+        recount();
     }
 
     ///////////////////////////////////
@@ -158,6 +171,7 @@ public class Board implements Serializable {
             }
         }
 
+        recount();
     }
 
     // the duplicate cells, after sanity check duplicate cell failure
@@ -358,9 +372,30 @@ public class Board implements Serializable {
             }
         }
         unknowns = unknownCnt; 
+        recount();
         return true;
     }
 
+    /**
+     * set the board from an array of cells, 0 for unknown, as read by PuzzleReader
+     */
+    public void setCells(byte[] cells, int offset) {
+        int unknownCnt = TOTAL_CELLS;
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                int value = cells[offset + i * 9 + j];
+                if (value != 0) {
+                    sudokuCells[i][j].setValue(value);
+                    unknownCnt--;
+                } else {
+                    sudokuCells[i][j].reset();
+                }
+            }
+        }
+        unknowns = unknownCnt;
+        recount();
+    }
+
     /**
      * get a puzzle object from the board. 
      * Note that a puzzle does not include all information a board has
@@ -463,6 +498,8 @@ public class Board implements Serializable {
             validCellLists = (CellList[]) inputStream.readObject();
             unknowns = (Integer) inputStream.readObject();
             
+            recount();
+            
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
@@ -478,21 +515,61 @@ public class Board implements Serializable {
         validCellSets = o.validCellSets;
         validCellLists = o.validCellLists;
         unknowns = o.unknowns;
+        valuePlaces = o.valuePlaces;
+        knownValues = o.knownValues;
+        contradiction = o.contradiction;
+    }
+
+    // back to an empty board, in place
+    void clear() {
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                sudokuCells[i][j].reset();
+            }
+        }
+        unknowns = TOTAL_CELLS;
+        recount();
     }
 
     public void setValue(int row, int col, int val) {
-        if (!sudokuCells[row][col].known) {
-            sudokuCells[row][col].setValue(val);
+        Cell cell = sudokuCells[row][col];
+        if (!cell.known) {
+            // the other candidates are gone
+            boolean candidate = false;
+            for (int i : cell.candidates) {
+                if (i == val) {
+                    candidate = true;
+                } else {
+                    removePlace(row, col, i);
+                }
+            }
+            if (!candidate) {
+                addPlace(row, col, val);
+            }
+            cell.setValue(val);
             unknowns--;
+            addKnown(row, col, val);
+        } else if (contradiction == null && cell.value != val) {
+            // no duplicate of the old value, as there is no contradiction
+            int old = cell.value;
+            cell.setValue(val);
+            removeKnown(row, col, old);
+            removePlace(row, col, old);
+            addPlace(row, col, val);
+            addKnown(row, col, val);
         } else {
-            sudokuCells[row][col].setValue(val);
+            cell.setValue(val);
+            recount();
         }
     }
 
     boolean removeCandidate(int row, int col, int val) {
-        if (sudokuCells[row][col].removeCandidate(val)) {
-            if (sudokuCells[row][col].known) {
+        Cell cell = sudokuCells[row][col];
+        if (cell.removeCandidate(val)) {
+            removePlace(row, col, val);
+            if (cell.known) {
                 unknowns--;
+                addKnown(row, col, cell.value);
             }
             return true;
         } else {
@@ -501,14 +578,150 @@ public class Board implements Serializable {
     }
 
     public void reset(int row, int col) {
-        if (sudokuCells[row][col].known) {
-            sudokuCells[row][col].init(row, col);
+        Cell cell = sudokuCells[row][col];
+
+        // the values coming back as candidates, the known one is no duplicate as there is no contradiction,
+        // otherwise the contradiction may be gone, so recounted
+        if (contradiction == null) {
+            for (int i = 1; i <= 9; i++) {
+                if (cell.known ? i != cell.value : !cell.candidates.contains(i)) {
+                    addPlace(row, col, i);
+                }
+            }
+            if (cell.known) {
+                removeKnown(row, col, cell.value);
+            }
+        }
+
+        if (cell.known) {
+            cell.init(row, col);
             unknowns++;
         } else {
-            sudokuCells[row][col].init(row, col);
+            cell.init(row, col);
+        }
+
+        if (contradiction != null) {
+            recount();
         }
     }
 
+    ///////////////////////////////////
+    // the incremental contradiction check
+
+    /**
+     * the check of a solve, at each branch and solution: the contradiction found as the cells changed,
+     * a duplicate value or a value with no place in a set, so no walk of the sets.
+     * in the debug mode, sanityCheck() is done too, and a contradiction it finds must have been found.
+     */
+    protected void checkContradiction(boolean strictCandidatesCheck) throws BoardException {
+        if (contradiction != null) {
+            throw new BoardException(contradiction);
+        }
+
+        if (FULL_SANITY_CHECK) {
+            try {
+                sanityCheck(strictCandidatesCheck);
+            } catch (BoardException e) {
+                throw new Error("error: contradiction not found incrementally - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * count the values of the sets from the cells, after the cells are set other than by 
+     * setValue(), removeCandidate() or reset(), e.g. deserialized
+     */
+    void recount() {
+        valuePlaces = new int[TOTAL_CELL_SETS][9];
+        knownValues = new int[TOTAL_CELL_SETS];
+        contradiction = null;
+
+        for (int row = 0; row < 9; row++) {
+            for (int col = 0; col < 9; col++) {
+                Cell cell = sudokuCells[row][col];
+                if (cell.known) {
+                    addPlace(row, col, cell.value);
+                    addKnown(row, col, cell.value);
+                } else {
+                    for (int i : cell.candidates) {
+                        addPlace(row, col, i);
+                    }
+                }
+            }
+        }
+
+        for (int cellSetIdx = 0; cellSetIdx < TOTAL_CELL_SETS && contradiction == null; cellSetIdx++) {
+            for (int i = 0; i < 9; i++) {
+                if (valuePlaces[cellSetIdx][i] == 0) {
+                    contradiction = "number " + (i + 1) + " is neither known or appear as a candidate within a set.";
+                    break;
+                }
+            }
+        }
+
+        // the cells counted may have more than one contradiction, the one told is that of sanityCheck(),
+        // e.g. of a puzzle with conflicts
+        if (contradiction != null) {
+            try {
+                sanityCheck(false);
+            } catch (BoardException e) {
+                contradiction = e.getMessage();
+            }
+        }
+    }
+
+    public String getContradiction() {
+        return contradiction;
+    }
+
+    private void addPlace(int row, int col, int val) {
+        valuePlaces[row][val - 1]++;
+        valuePlaces[9 + col][val - 1]++;
+        valuePlaces[18 + row / 3 * 3 + col / 3][val - 1]++;
+    }
+
+    private void removePlace(int row, int col, int val) {
+        if (--valuePlaces[row][val - 1] == 0
+                | --valuePlaces[9 + col][val - 1] == 0
+                | --valuePlaces[18 + row / 3 * 3 + col / 3][val - 1] == 0) {
+            if (contradiction == null) {
+                contradiction = "number " + val + " is neither known or appear as a candidate within a set.";
+            }
+        }
+    }
+
+    private void addKnown(int row, int col, int val) {
+        int bit = 1 << val;
+        int cellSets[] = { row, 9 + col, 18 + row / 3 * 3 + col / 3 };
+        for (int cellSetIdx : cellSets) {
+            if ((knownValues[cellSetIdx] & bit) != 0 && contradiction == null) {
+                // the other cell of the value
+                Cell cell = sudokuCells[row][col];
+                for (Cell other : validCellSets[cellSetIdx]) {
+                    if (other != cell && other.known && other.value == val) {
+                        contradiction = "sanity check failed: duplicate value of cells within a set - " 
+                                + cell.toPositionString() + ", " + other.toPositionString();
+                        break;
+                    }
+                }
+            }
+            knownValues[cellSetIdx] |= bit;
+        }
+    }
+
+    private void removeKnown(int row, int col, int val) {
+        int bit = 1 << val;
+        knownValues[row] &= ~bit;
+        knownValues[9 + col] &= ~bit;
+        knownValues[18 + row / 3 * 3 + col / 3] &= ~bit;
+    }
+
+    private static boolean assertionsEnabled() {
+        boolean enabled = false;
+        assert enabled = true;
+        return enabled;
+    }
+
     public CellSet getValidCellSet(int cellSetIdx) {
         return validCellSets[cellSetIdx];
     }
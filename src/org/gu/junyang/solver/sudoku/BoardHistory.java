@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a history of boards, delta encoded, instead of a copy of each board.
+ *
+ * a cell is encoded in an int: the candidates in bits 0-8, the value in bits 9-12, 0 if unknown.
+ * a board added is stored as the changes from the previous one, an int per cell changed:
+ * the cell index in bits 0-6, and the exclusive or of the old and the new encoding above that;
+ * so a change can be applied either way, e.g. a backtrack of the search just changes the cells back.
+ * every KEYFRAME_INTERVAL boards, the whole board is kept too, a keyframe, so a board is rebuilt
+ * from the keyframe before it and at most KEYFRAME_INTERVAL-1 changes.
+ *
+ * a step of the solver changes a few cells, so it is tens of bytes, instead of the thousands of bytes of a Board;
+ * and adding a board is a pass over its cells, instead of a serialization.
+ *
+ * a board got is a new Board, so it can be changed.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class BoardHistory extends AbstractList<Board> {
+
+	static final int KEYFRAME_INTERVAL = 32;
+
+	static final int VALUE_SHIFT = 9;
+	static final int CELL_BITS = 7;
+	static final int CELL_MASK = (1 << CELL_BITS) - 1;
+
+	// the changes of all the boards, the changes of board i start at changeStarts[i]
+	int [] changes = new int[256];
+	int changeCount = 0;
+	int [] changeStarts = new int[64];
+	int size = 0;
+
+	// the boards 0, KEYFRAME_INTERVAL, 2 * KEYFRAME_INTERVAL ...
+	ArrayList<short[]> keyframes = new ArrayList<short[]>();
+
+	// the last board added
+	final int [] last = new int[Board.TOTAL_CELLS];
+
+	// a board being added
+	final int [] encoded = new int[Board.TOTAL_CELLS];
+
+	///////////////////////////////////
+
+	/**
+	 * the board is not kept, so it can be changed after
+	 */
+	@Override
+	public boolean add(Board board) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++)
+			encoded[i] = encode(board.sudokuCells[i / 9][i % 9]);
+		addCells(encoded);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public Board get(int index) {
+		return toBoard(getCells(index));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * remove the boards from the index on
+	 */
+	public void removeTailStartingAt(int index) {
+		if (index >= size)
+			return;
+		if (index <= 0) {
+			clear();
+			return;
+		}
+
+		int [] cells = getCells(index - 1);
+		System.arraycopy(cells, 0, last, 0, Board.TOTAL_CELLS);
+		changeCount = changeStarts[index];
+		size = index;
+		while (keyframes.size() > (size - 1) / KEYFRAME_INTERVAL + 1)
+			keyframes.remove(keyframes.size() - 1);
+		modCount++;
+	}
+
+	/**
+	 * remove the oldest boards, the board of the index becomes the first one
+	 */
+	public void removeHead(int index) {
+		if (index <= 0)
+			return;
+		if (index >= size) {
+			clear();
+			return;
+		}
+
+		// re-encode the rest from the new first board
+		int [] first = getCells(index);
+		int [] from = changeStarts;
+		int [] oldChanges = changes;
+		int oldSize = size;
+		int oldChangeCount = changeCount;
+
+		changes = new int[Math.max(oldChangeCount - from[index] + Board.TOTAL_CELLS, 256)];
+		changeCount = 0;
+		changeStarts = new int[Math.max(oldSize - index, 64)];
+		size = 0;
+		keyframes.clear();
+
+		int [] cells = first;
+		addCells(cells);
+		for (int i=index+1; i<oldSize; i++) {
+			int end = i + 1 < oldSize ? from[i + 1] : oldChangeCount;
+			for (int k=from[i]; k<end; k++)
+				cells[oldChanges[k] & CELL_MASK] ^= oldChanges[k] >>> CELL_BITS;
+			addCells(cells);
+		}
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		changeCount = 0;
+		size = 0;
+		keyframes.clear();
+		modCount++;
+	}
+
+	/**
+	 * the cells changed by the board of the index, from the board before it
+	 * @param compareCandidates	if false, only the cells of a value changed
+	 */
+	public ArrayList<CellPosition> getChangedCells(int index, boolean compareCandidates) {
+		ArrayList<CellPosition> positions = new ArrayList<CellPosition>();
+		if (index <= 0 || index >= size)
+			return positions;
+		int end = index + 1 < size ? changeStarts[index + 1] : changeCount;
+		for (int k=changeStarts[index]; k<end; k++) {
+			int cell = changes[k] & CELL_MASK;
+			int change = changes[k] >>> CELL_BITS;
+			if (compareCandidates || (change >>> VALUE_SHIFT) != 0)
+				positions.add(new CellPosition(cell / 9, cell % 9));
+		}
+		return positions;
+	}
+
+	/**
+	 * the bytes held by the history, roughly
+	 */
+	public long getMemoryBytes() {
+		return 4L * (changes.length + changeStarts.length + last.length)
+				+ (long) keyframes.size() * (2 * Board.TOTAL_CELLS + 16);
+	}
+
+	///////////////////////////////////
+
+	private void addChange(int change) {
+		if (changeCount == changes.length)
+			changes = Arrays.copyOf(changes, changeCount * 2);
+		changes[changeCount++] = change;
+	}
+
+	// add a board, given encoded; the first board is all in its keyframe, with no changes
+	private void addCells(int [] cells) {
+		if (size == changeStarts.length)
+			changeStarts = Arrays.copyOf(changeStarts, size * 2);
+		changeStarts[size] = changeCount;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (size != 0 && cells[i] != last[i])
+				addChange(i | (cells[i] ^ last[i]) << CELL_BITS);
+			last[i] = cells[i];
+		}
+		if (size % KEYFRAME_INTERVAL == 0) {
+			short [] keyframe = new short[Board.TOTAL_CELLS];
+			for (int i=0; i<Board.TOTAL_CELLS; i++)
+				keyframe[i] = (short) cells[i];
+			keyframes.add(keyframe);
+		}
+		size++;
+	}
+
+	// the encoded cells of the board of the index
+	private int [] getCells(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+
+		int keyIndex = index / KEYFRAME_INTERVAL;
+		short [] keyframe = keyframes.get(keyIndex);
+		int [] cells = new int[Board.TOTAL_CELLS];
+		for (int i=0; i<Board.TOTAL_CELLS; i++)
+			cells[i] = keyframe[i];
+
+		if (index == keyIndex * KEYFRAME_INTERVAL)
+			return cells;
+
+		// the changes of the boards after the keyframe, up to the index
+		int start = changeStarts[keyIndex * KEYFRAME_INTERVAL + 1];
+		int end = index + 1 < size ? changeStarts[index + 1] : changeCount;
+		for (int k=start; k<end; k++)
+			cells[changes[k] & CELL_MASK] ^= changes[k] >>> CELL_BITS;
+		return cells;
+	}
+
+	static int encode(Cell cell) {
+		if (cell.known)
+			return cell.value << VALUE_SHIFT;
+		int mask = 0;
+		for (int candidate : cell.candidates)
+			mask |= 1 << (candidate - 1);
+		return mask;
+	}
+
+	static Board toBoard(int [] cells) {
+		Board board = new Board();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			int row = i / 9;
+			int col = i % 9;
+			int value = cells[i] >>> VALUE_SHIFT;
+			if (value != 0) {
+				board.setValue(row, col, value);
+			} else {
+				Candidates candidates = board.sudokuCells[row][col].candidates;
+				candidates.clear();
+				for (int candidate=1; candidate<=9; candidate++) {
+					if ((cells[i] & (1 << (candidate - 1))) != 0)
+						candidates.add(candidate);
+				}
+			}
+		}
+		board.recount();
+		return board;
+	}
+
+}
@@ -24,15 +24,32 @@
 
 package org.gu.junyang.solver.sudoku;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.Date;
-import java.util.Scanner;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 import org.gu.junyang.solver.sudoku.Solver.Action;
 import org.gu.junyang.solver.sudoku.Sudoku.SolveResult;
+import org.gu.junyang.utilities.LatencyHistogram;
 import org.gu.junyang.utilities.MessagePoster;
 import org.gu.junyang.utilities.ProgramErrorException;
 
@@ -50,6 +67,24 @@ public class Cli implements MessagePoster {
 	boolean inputFromFile = true;
 	String inputFile;
 	
+	// if set, only this puzzle (0 based) of the input file is read
+	Long puzzleIndex = null;
+	
+	// number of solver threads, 0 for the default: 1 for batch solving, the number of processors for serving
+	int threadCount = 0;
+	
+	boolean serve = false;
+	
+	// if set, serve on this local TCP port instead of the console
+	Integer listenPort = null;
+	
+	// time limit in milliseconds of each puzzle, or each served request, 0 for none
+	long timeout = 0;
+	
+	// search limits of each puzzle, 0 for none
+	long maxNodes = 0;
+	long maxGuesses = 0;
+	
 	int puzzleCount;
 	int solvedCount;
 	int nonUniquePuzzleCount;
@@ -62,15 +97,39 @@ public class Cli implements MessagePoster {
 
 	boolean allSolutions = false;
 	
+	// for a puzzle of multiple solutions, the cells of the same value in all of them
+	boolean backbone = false;
+	// and the fewest values to add for a unique solution
+	boolean clues = false;
+	
 	Board board;
 	
 	Integer targetCapability = null;
 	
 	boolean reduce = false;
 	
+	// search the puzzles of the fewest clues of the grid of each puzzle, or of a generated one
+	boolean minimalSearch = false;
+	long attempts = 1000;
+	String checkpointFile;
+	
 	Sudoku sudoku = new Sudoku();
 	
-	Scanner scanner;
+	PuzzleReader puzzleReader;
+	
+	SolveLimits solveLimits = SolveLimits.NONE;
+	
+	// of all the puzzles solved
+	SolveStats totalStats = new SolveStats();
+	
+	// the solve time of each puzzle, in nanoseconds, of all the puzzles, and by the level solved at and by the result
+	LatencyHistogram latencies = new LatencyHistogram();
+	TreeMap<Integer, LatencyHistogram> latenciesByLevel = new TreeMap<Integer, LatencyHistogram>();
+	EnumMap<SolveResult, LatencyHistogram> latenciesByResult = new EnumMap<SolveResult, LatencyHistogram>(SolveResult.class);
+	
+	// if set, the solve time of each puzzle is written to this CSV file
+	String latencyCsvFile;
+	PrintWriter latencyCsv;
 
 	///////////////////////////////////
 
@@ -93,13 +152,26 @@ public class Cli implements MessagePoster {
 		System.err.println("\t--showprogress: show solve progress");
 		System.err.println("\t--showmorerogress: show more solve progress");
 		System.err.println("\t--all: show all solutions");
+		System.err.println("\t--backbone: for a puzzle of multiple solutions, show the values of all the solutions, within the limits");
+		System.err.println("\t--clues: for a puzzle of multiple solutions, show the fewest values to add for a unique solution, within the limits");
 		System.err.println("\t--batch: Solve multiple puzzles from input. Note that each puzzle must be preceeded by a puzzle ID (name).");
 		System.err.println("\t-g: generate a board");
 		System.err.println("\t-gr: generate a board randomly");
 		System.err.println("\t-gc capability_level: generate a board with specified capability level (1-6)");
 		System.err.println("\t--seed random_seed_number: set random seed number, default is 1");
 		System.err.println("\t--reduce: try to reduce a puzzle");
+		System.err.println("\t--minimal-search: search the puzzles of the fewest clues of the solution of a puzzle, or of a generated one with -g or -gr");
+		System.err.println("\t--attempts n: the attempts of a minimal search, default is 1000");
+		System.err.println("\t--checkpoint file: save a minimal search to the file as it goes, and resume it from the file");
 		System.err.println("\t-r: use random search");
+		System.err.println("\t--index puzzle_index: only read the puzzle of the index (starting from 0) from the input file");
+		System.err.println("\t--threads thread_count: solve puzzles with the number of threads, the output is in the input order");
+		System.err.println("\t--serve: serve JSON requests, one per line, from the console, see RequestHandler for the requests");
+		System.err.println("\t--listen port: serve JSON requests on the local TCP port, instead of the console");
+		System.err.println("\t--timeout milliseconds: time limit of each puzzle, or the default deadline of a served request, or of a minimal search");
+		System.err.println("\t--maxnodes n: limit of the search nodes of each puzzle");
+		System.err.println("\t--maxguesses n: limit of the trial and error guesses of each puzzle");
+		System.err.println("\t--latencycsv file: write the solve time of each puzzle to the CSV file");
 		System.exit(1);
 	}
 
@@ -142,6 +214,12 @@ public class Cli implements MessagePoster {
 			} else if (s.equals("--all")) {
 				allSolutions = true;
 				
+			} else if (s.equals("--backbone")) {
+				backbone = true;
+				
+			} else if (s.equals("--clues")) {
+				clues = true;
+				
 			} else if (s.equals("-gc")) {
 				generate = true;
 				i++;
@@ -166,9 +244,104 @@ public class Cli implements MessagePoster {
 			} else if (s.equals("--reduce")) {
 				reduce = true;
 				
+			} else if (s.equals("--minimal-search")) {
+				minimalSearch = true;
+				
+			} else if (s.equals("--attempts")) {
+				i++;
+				if (i<args.length)
+					attempts = Long.parseLong(args[i]);
+				else {
+					System.err.println("need to specify attempts - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--checkpoint")) {
+				i++;
+				if (i<args.length)
+					checkpointFile = args[i];
+				else {
+					System.err.println("need to specify checkpoint file - see help");
+					System.exit(1);
+				}
+				
 			} else if (s.equals("-r")) {
 				randomSearch = true;
 				
+			} else if (s.equals("--index")) {
+				i++;
+				if (i<args.length)
+					puzzleIndex = Long.parseLong(args[i]);
+				else {
+					System.err.println("need to specify puzzle index - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--serve")) {
+				serve = true;
+				inputFromFile = false;
+				
+			} else if (s.equals("--listen")) {
+				i++;
+				if (i<args.length)
+					listenPort = Integer.parseInt(args[i]);
+				else {
+					System.err.println("need to specify port - see help");
+					System.exit(1);
+				}
+				serve = true;
+				inputFromFile = false;
+				
+			} else if (s.equals("--timeout")) {
+				i++;
+				if (i<args.length)
+					timeout = Long.parseLong(args[i]);
+				else {
+					System.err.println("need to specify timeout - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--maxnodes")) {
+				i++;
+				if (i<args.length)
+					maxNodes = Long.parseLong(args[i]);
+				else {
+					System.err.println("need to specify max nodes - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--maxguesses")) {
+				i++;
+				if (i<args.length)
+					maxGuesses = Long.parseLong(args[i]);
+				else {
+					System.err.println("need to specify max guesses - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--latencycsv")) {
+				i++;
+				if (i<args.length)
+					latencyCsvFile = args[i];
+				else {
+					System.err.println("need to specify CSV file - see help");
+					System.exit(1);
+				}
+				
+			} else if (s.equals("--threads")) {
+				i++;
+				if (i<args.length)
+					threadCount = Integer.parseInt(args[i]);
+				else {
+					System.err.println("need to specify thread count - see help");
+					System.exit(1);
+				}
+				
+				if (threadCount < 1) {
+					System.err.println("error: thread count of " + threadCount + " out of range.");
+					System.exit(1);
+				}
+				
 			} else {
 				inputFile = s;
 				System.err.println("input file: " + s);
@@ -181,9 +354,51 @@ public class Cli implements MessagePoster {
 		
 		ParseArguments(args);
 		
+		// the results of a solve are printed before the next one
+		sudoku.setUsePooledSolver(true);
+		
+		solveLimits = new SolveLimits(timeout, maxNodes, maxGuesses);
+		sudoku.setSolveLimits(solveLimits);
+		
 		Date start = new Date();
 		
-		if (generate) {
+		if (serve) {
+			if (threadCount == 0)
+				threadCount = Runtime.getRuntime().availableProcessors();
+			
+			Daemon daemon = new Daemon(threadCount, new SolveCache());
+			daemon.setDefaultTimeout(timeout);
+			
+			if (listenPort != null) {
+				// serve until killed
+				new SolverServer(listenPort, daemon).run();
+			} else
+				daemon.serve(System.in, System.out);
+			
+			daemon.shutdown();
+			
+		} else if (minimalSearch) {
+			if (threadCount == 0)
+				threadCount = Runtime.getRuntime().availableProcessors();
+			
+			if (generate) {
+				sudoku.setUseRandomSeed(useRandomSeed);
+				sudoku.setRandomSeed(randomSeed);
+				sudoku.setRandomSearch(randomSearch);
+				
+				board = sudoku.generatePuzzle(this);
+				searchMinimal(board.getPuzzle());
+			} else {
+				if (inputFromFile && inputFile==null) {
+					System.err.printf("no input file specified.");
+					System.exit(1);
+				}
+				
+				getPuzzleReader();
+				searchMinimalPuzzles();
+			}
+			
+		} else if (generate) {
 			
 			sudoku.setUseRandomSeed(useRandomSeed);
 			sudoku.setRandomSeed(randomSeed);
@@ -197,7 +412,11 @@ public class Cli implements MessagePoster {
 			
 			board = sudoku.getBoard();
 			
-			System.out.println(board.toSimpleString());
+			if (sudoku.getLimitReason() != null)
+				System.err.println("limit reached: " + sudoku.getLimitReason());
+			
+			if (board != null)
+				System.out.println(board.toSimpleString());
 			
 		} else {
 			if (inputFromFile && inputFile==null) {
@@ -205,7 +424,7 @@ public class Cli implements MessagePoster {
 				System.exit(1);
 			}
 			
-			getScanner();
+			getPuzzleReader();
 
 			if (reduce) {
 				reducePuzzles();
@@ -218,20 +437,52 @@ public class Cli implements MessagePoster {
 		System.err.println("miliseconds used: " + (end.getTime() - start.getTime()) );
 	}
 
-	private void solveReadPuzzles() throws FileNotFoundException {
+	private void solveReadPuzzles() throws IOException, InterruptedException, ExecutionException {
+		if (latencyCsvFile != null) {
+			latencyCsv = new PrintWriter(new BufferedWriter(new FileWriter(latencyCsvFile)));
+			latencyCsv.println("index,name,result,level,nanoseconds");
+		}
+		
+		try {
+			if (threadCount > 1)
+				solveReadPuzzlesParallel();
+			else
+				solveReadPuzzlesSerial();
+		} finally {
+			if (latencyCsv != null)
+				latencyCsv.close();
+		}
+		
+		if (batchMode) {
+			System.err.println("total puzzles: " + puzzleCount + ", solved: " + solvedCount + 
+					", non-unique solution puzzles: " + nonUniquePuzzleCount);
+			System.err.print("total stats: " + totalStats);
+			printLatencies(System.err);
+		}
+	}
+
+	private void solveReadPuzzlesSerial() throws IOException {
 		do
 		{
 			// read puzzle name, if applicable
 			if (batchMode) {
-				if (!scanner.hasNext()) {
+				puzzleName = puzzleReader.readName();
+				if (puzzleName == null) {
 					break;
 				}
-				puzzleName = scanner.next();
 				System.out.printf("%s\n", puzzleName);
 			}
 
-			if ( ! solveReadPuzzle() )
+			board = new Board();
+			
+			// read puzzle
+			if ( ! readBoard(board, System.out) )
 				break;
+
+			SolveOutput output = new SolveOutput();
+			output.name = puzzleName;
+			solvePuzzle(sudoku, board, System.out, System.err, output);
+			countSolveResult(output);
 			
 			System.err.println();
 			
@@ -240,60 +491,283 @@ public class Cli implements MessagePoster {
 		} while (true);
 
 //		System.out.println("end of input.");
+	}
+
+	private void countSolveResult(SolveOutput output) {
+		SolveResult solveResult = output.solveResult;
+		if (output.stats != null)
+			totalStats.add(output.stats);
+		if ( solveResult == SolveResult.SOLVED || solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS )
+			solvedCount++;
+		if ( solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS )
+			nonUniquePuzzleCount++;
 		
-		if (batchMode)
-			System.err.println("total puzzles: " + puzzleCount + ", solved: " + solvedCount + 
-					", non-unique solution puzzles: " + nonUniquePuzzleCount);
+		countLatency(output);
+	}
+
+	/**
+	 * the level is only that of a solved puzzle, it is left over from an earlier puzzle otherwise
+	 */
+	private void countLatency(SolveOutput output) {
+		boolean solved = output.solveResult == SolveResult.SOLVED 
+				|| output.solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS;
+		
+		latencies.record(output.nanos);
+		
+		LatencyHistogram histogram = latenciesByResult.get(output.solveResult);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			latenciesByResult.put(output.solveResult, histogram);
+		}
+		histogram.record(output.nanos);
+		
+		if (solved) {
+			histogram = latenciesByLevel.get(output.level);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				latenciesByLevel.put(output.level, histogram);
+			}
+			histogram.record(output.nanos);
+		}
+		
+		if (latencyCsv != null) {
+			String name = output.name == null ? "" : output.name;
+			if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0)
+				name = '"' + name.replace("\"", "\"\"") + '"';
+			latencyCsv.println(puzzleCount + "," + name + "," + output.solveResult + "," 
+					+ (solved ? Integer.toString(output.level) : "") + "," + output.nanos);
+		}
+	}
 
+	private void printLatencies(PrintStream err) {
+		err.printf("%-42s %8s %9s %9s %9s %9s %9s\n", "solve time (ms):", "count", "p50", "p90", "p99", "p99.9", "max");
+		printLatency(err, "all puzzles", latencies);
+		for (Map.Entry<Integer, LatencyHistogram> entry : latenciesByLevel.entrySet())
+			printLatency(err, "solved at capability level " + entry.getKey(), entry.getValue());
+		for (Map.Entry<SolveResult, LatencyHistogram> entry : latenciesByResult.entrySet())
+			printLatency(err, entry.getKey().toString(), entry.getValue());
 	}
 
-	private void getScanner() throws FileNotFoundException {
-		if ( inputFromFile ) {
+	private void printLatency(PrintStream err, String label, LatencyHistogram histogram) {
+		err.printf("  %-40s %8d %9.3f %9.3f %9.3f %9.3f %9.3f\n", label, histogram.getCount(), 
+				histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+				histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+				histogram.getMax() / 1e6);
+	}
+
+	/**
+	 * the output of a puzzle solved by a worker thread, 
+	 * solveResult is null if there is no puzzle, e.g. at the end of input
+	 */
+	static class SolveOutput {
+		String out;
+		String err;
+		String name;
+		SolveResult solveResult;
+		SolveStats stats;
+		int level;
+		// the time of the solve itself
+		long nanos;
+	}
+
+	/**
+	 * wait for room in the output queue, the writer may have failed though
+	 */
+	private void putOutput(BlockingQueue<Future<SolveOutput>> outputs, Future<Void> writer, 
+			Future<SolveOutput> output) throws InterruptedException, ExecutionException {
+		while ( ! outputs.offer(output, 100, TimeUnit.MILLISECONDS) ) {
+			if (writer.isDone())
+				writer.get();
+		}
+	}
+
+	/**
+	 * a reader stage (this thread) reads puzzles, a pool of workers solve them, 
+	 * and a writer stage prints the outputs in the input order.
+	 * 
+	 * the reader queues the future of each puzzle, and the writer waits for them in turn,
+	 * so the bounded queue limits the number of puzzles read ahead of the writer.
+	 */
+	private void solveReadPuzzlesParallel() throws IOException, InterruptedException, ExecutionException {
+		ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+		final BlockingQueue<Future<SolveOutput>> outputs = new ArrayBlockingQueue<Future<SolveOutput>>(threadCount * 4);
+		
+		// each worker has its own Sudoku, they are not thread safe
+		final ThreadLocal<Sudoku> workerSudoku = new ThreadLocal<Sudoku>() {
+			@Override
+			protected Sudoku initialValue() {
+				Sudoku sudoku = new Sudoku();
+				sudoku.setUsePooledSolver(true);
+				sudoku.setSolveLimits(solveLimits);
+				return sudoku;
+			}
+		};
+		
+		FutureTask<Void> writer = new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws Exception {
+				while (true) {
+					SolveOutput output = outputs.take().get();
+					System.out.print(output.out);
+					System.err.print(output.err);
+					if (output.solveResult == null)
+						break;
+					countSolveResult(output);
+					puzzleCount++;
+				}
+				return null;
+			}
+		});
+		Thread writerThread = new Thread(writer, "writer");
+		writerThread.start();
+		
+		String endOut = "";
+		try {
+			do {
+				ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+				PrintStream out = new PrintStream(outBytes);
+				
+				// read puzzle name, if applicable
+				final String name;
+				if (batchMode) {
+					name = puzzleReader.readName();
+					if (name == null) {
+						break;
+					}
+					out.printf("%s\n", name);
+				} else
+					name = null;
+	
+				final Board board = new Board();
+				
+				if ( ! readBoard(board, out) ) {
+					// pass on what has been printed, e.g. unexpected end of input
+					endOut = outBytes.toString();
+					break;
+				}
+	
+				final String nameOut = outBytes.toString();
+				putOutput(outputs, writer, workers.submit(new Callable<SolveOutput>() {
+					public SolveOutput call() {
+						ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+						ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+						PrintStream err = new PrintStream(errBytes);
+						
+						SolveOutput output = new SolveOutput();
+						output.name = name;
+						solvePuzzle(workerSudoku.get(), board, new PrintStream(outBytes), err, output);
+						err.println();
+						
+						output.out = nameOut + outBytes.toString();
+						output.err = errBytes.toString();
+						return output;
+					}
+				}));
+	
+			} while (true);
+			
+			// the end
+			final SolveOutput end = new SolveOutput();
+			end.out = endOut;
+			end.err = "";
+			FutureTask<SolveOutput> endTask = new FutureTask<SolveOutput>(new Callable<SolveOutput>() {
+				public SolveOutput call() {
+					return end;
+				}
+			});
+			endTask.run();
+			putOutput(outputs, writer, endTask);
+			
+			writer.get();
+		} finally {
+			workers.shutdownNow();
+			writerThread.interrupt();
+		}
+	}
+
+	private void getPuzzleReader() throws IOException {
+		if ( inputFromFile && puzzleIndex != null ) {
+			System.err.println("reading puzzle " + puzzleIndex + " from file: " + inputFile + "...");
+			PuzzleCorpus corpus = new PuzzleCorpus(inputFile, batchMode);
+			if (puzzleIndex < 0 || puzzleIndex >= corpus.size()) {
+				System.err.println("error: puzzle index " + puzzleIndex + " out of range, the file has " + corpus.size() + " puzzle(s).");
+				System.exit(1);
+			}
+			puzzleReader = new PuzzleReader(corpus.getRecordBuffer(puzzleIndex));
+			corpus.close();
+		}
+		else if ( inputFromFile ) {
 			System.err.println("reading puzzle(s) from file: " + inputFile + "...");
-			scanner = new Scanner(new FileInputStream(inputFile));
+			puzzleReader = PuzzleReader.open(inputFile);
 		}
 		else {
 			System.err.println("reading puzzle(s) from console...");
-			scanner = new Scanner(System.in);
+			puzzleReader = new PuzzleReader(System.in);
 		}
 	}
 
-	boolean solveReadPuzzle() {
-		board = new Board();
-		
-		// read puzzle
-		if ( ! board.read(scanner) )
+	// read a puzzle into the board, return false if no more puzzle
+	private boolean readBoard(Board board, PrintStream out) throws IOException {
+		try {
+			return puzzleReader.read(board);
+		} catch (Puzzle.UnexpectedEndOfInputException e) {
+			out.println("unexpected end of input.");
 			return false;
+		}
+	}
 
-		System.err.println(board.toSimpleString());
+	/**
+	 * solve a puzzle, printing the results to the given streams
+	 * @param output	the result, stats, level and solve time are set
+	 */
+	SolveResult solvePuzzle(Sudoku sudoku, Board board, PrintStream out, PrintStream err, SolveOutput output) {
+		err.println(board.toSimpleString());
 
 		sudoku.setFindAllSolutions(allSolutions);
 		sudoku.setSolvingCapabilityLevel(capabilityLevel);
 		sudoku.setRecordTranscript(true);
 		sudoku.setRandomSearch(randomSearch);
 		
+		// the input, for the backbone and the fix of a puzzle of multiple solutions
+		int [] masks = FastSolver.getMasks(board, true);
+		Puzzle puzzle = board.getPuzzle();
+
+		long start = System.nanoTime();
 		SolveResult solveResult = sudoku.solve(board);
+		output.nanos = System.nanoTime() - start;
+		
+		output.solveResult = solveResult;
+		output.stats = sudoku.getStats();
+		output.level = sudoku.getLevel();
 	
-		System.err.println();
+		err.println();
 
 		board = sudoku.getBoard();
 		
 		if ( solveResult == SolveResult.UNSOLVABLE ) {
-			System.out.println(sudoku.getMessage());
-			System.out.println(board.toSimpleString());
+			out.println(sudoku.getMessage());
+			out.println(board.toSimpleString());
 			
 		} else if ( solveResult == SolveResult.UNSOLVED ) {
-			System.out.printf("cells unknown: %d\n", board.unknowns);
-			System.out.println();
+			out.printf("cells unknown: %d\n", board.unknowns);
+			out.println();
 			
-			System.out.println(board.toSimpleString());
+			out.println(board.toSimpleString());
 			
 			if (board.unknowns!=0) {
-				System.out.println();
-				System.out.println(board.toString());
+				out.println();
+				out.println(board.toString());
 			}
 
-			System.out.printf("unsolvable with capability level %d.\n", capabilityLevel);
+			out.printf("unsolvable with capability level %d.\n", capabilityLevel);
+			
+		} else if ( solveResult == SolveResult.LIMIT_REACHED ) {
+			out.println("limit reached: " + sudoku.getLimitReason());
+			out.printf("cells unknown: %d\n", board.unknowns);
+			out.printf("solutions found: %d\n", sudoku.getSolutionCount());
+			for (int i=0; i<sudoku.getSolutionCount(); i++) {
+				out.println("solution:");
+				out.println(sudoku.getSolutions().get(i));
+			}
 		}
 		else	// solved
 		{
@@ -303,55 +777,61 @@ public class Cli implements MessagePoster {
 						if (!showMoreProgress)
 							continue;
 					
-					System.out.println(sudoku.getTranscript().get(i));
+					out.println(sudoku.getTranscript().get(i));
 				}
 			}
 			
-			System.err.println( "solved: capability level " + sudoku.getLevel() );
-			solvedCount++;
+			err.println( "solved: capability level " + sudoku.getLevel() );
 			
-			System.out.println(sudoku.getSolutions().get(0));
+			out.println(sudoku.getSolutions().get(0));
 			
 			// check multiple puzzle
 			if ( solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS ) {
-				nonUniquePuzzleCount++;
-				System.out.println("WARNING: multiple solutions found - if you add to the original puzzle the guessed values, the puzzle will have a unique solution.");
-				System.out.println("guessed values:");
-				System.out.println(sudoku.getGuessBoards().get(0));
+				out.println("WARNING: multiple solutions found - if you add to the original puzzle the guessed values, the puzzle will have a unique solution.");
+				out.println("guessed values:");
+				out.println(sudoku.getGuessBoards().get(0));
+
+				if (backbone)
+					printBackbone(sudoku, masks, out);
+				if (clues)
+					printClues(sudoku, puzzle, out);
 			}
 			
 			if (allSolutions) {
 				for (int i=1; i<sudoku.getSolutions().size(); i++) {
-					System.out.println("solution:");
-					System.out.println(sudoku.getSolutions().get(i));
-					System.out.println("guessed values:");
-					System.out.println(sudoku.getGuessBoards().get(i));
-					System.out.println();
+					out.println("solution:");
+					out.println(sudoku.getSolutions().get(i));
+					out.println("guessed values:");
+					out.println(sudoku.getGuessBoards().get(i));
+					out.println();
 				}
 			}
 			
 			if (sudoku.isFindAllSolutionsLimitExceeded())
-				System.out.println("WARNING: number of solutions exeeded limit of " + Solver.FIND_ALL_SOLUTIONS_LIMIT + ", terminated.");
+				out.println("WARNING: number of solutions exeeded limit of " + Solver.FIND_ALL_SOLUTIONS_LIMIT + ", terminated.");
 		}
 		
-		return true;
+		if (sudoku.getStats() != null)
+			err.print("stats: " + sudoku.getStats());
+		
+		return solveResult;
 	}
 
-	private void reducePuzzles() throws ProgramErrorException {
+	private void reducePuzzles() throws ProgramErrorException, IOException {
 		do
 		{
 			// read puzzle name, if applicable
 			if (batchMode) {
-				if (!scanner.hasNext()) {
+				puzzleName = puzzleReader.readName();
+				if (puzzleName == null) {
 					break;
 				}
-				puzzleName = scanner.next();
 				System.out.println(puzzleName);
 			}
 
 			board = new Board();
 			
-			if ( ! board.read(scanner) )
+			if ( ! readBoard(board, System.out) )
 				break;
 			
 			System.err.println(board.toSimpleString());
@@ -364,6 +844,9 @@ public class Cli implements MessagePoster {
 			
 			System.err.println();
 			
+			if (sudoku.getLimitReason() != null)
+				System.err.println("limit reached: " + sudoku.getLimitReason() + ", the reduction so far");
+			
 			if (sudoku.reductionCount>0) {
 				System.err.println("reduced: " + sudoku.reductionCount + " known value(s)");
 				System.out.println(board.toSimpleString());
@@ -382,6 +865,93 @@ public class Cli implements MessagePoster {
 			System.err.println("total puzzles: " + puzzleCount);
 	}
 
+	private void searchMinimalPuzzles() throws IOException, InterruptedException {
+		do
+		{
+			// read puzzle name, if applicable
+			if (batchMode) {
+				puzzleName = puzzleReader.readName();
+				if (puzzleName == null) {
+					break;
+				}
+				System.out.println(puzzleName);
+			}
+
+			board = new Board();
+			
+			if ( ! readBoard(board, System.out) )
+				break;
+			
+			System.err.println(board.toSimpleString());
+			
+			searchMinimal(board.getPuzzle());
+			
+			puzzleCount++;
+
+		} while (true);
+
+		if (batchMode)
+			System.err.println("total puzzles: " + puzzleCount);
+	}
+
+	/**
+	 * under what is left of the limits of the solve
+	 */
+	private void printBackbone(Sudoku sudoku, int [] masks, PrintStream out) {
+		try {
+			Backbone backbone = Backbone.of(masks, sudoku.getBudget());
+			out.println("backbone, the values of all the solutions, " + backbone.getFreeCount() + " cells of different values:");
+			out.println(backbone.getPuzzle());
+		} catch (SolveLimitException e) {
+			out.println("backbone: limit reached: " + e.getReason());
+		}
+	}
+
+	/**
+	 * under what is left of the limits of the solve
+	 */
+	private void printClues(Sudoku sudoku, Puzzle puzzle, PrintStream out) {
+		try {
+			ClueFixer clueFixer = ClueFixer.of(puzzle, sudoku.getBudget());
+			if (clueFixer.isExact())
+				out.println("the fewest values to add for a unique solution, " + clueFixer.getClueCount() + ":");
+			else
+				out.println("a minimal set of values to add for a unique solution, " + clueFixer.getClueCount() + ":");
+			out.println(clueFixer.getClues());
+		} catch (SolveLimitException e) {
+			out.println("values to add: limit reached: " + e.getReason());
+		}
+	}
+
+	/**
+	 * search the puzzles of the fewest clues of the grid of the first solution of the puzzle
+	 */
+	private void searchMinimal(Puzzle puzzle) throws IOException, InterruptedException {
+		int [] solution = MinimalSearch.solve(puzzle);
+		if (solution == null) {
+			System.out.println("unsolvable.");
+			System.out.println();
+			return;
+		}
+		
+		MinimalSearch search = new MinimalSearch(solution, randomSeed);
+		if (checkpointFile != null)
+			search.setCheckpointFile(new File(checkpointFile + (batchMode ? "." + puzzleCount : "")));
+		System.err.println("unavoidable sets: " + search.getUnavoidableSetCount());
+		
+		search.run(threadCount, attempts, timeout == 0 ? 0 : System.currentTimeMillis() + timeout);
+		
+		System.err.println("attempts: " + search.getAttemptsDone() + ", puzzles by clues: " + search.getClueCounts());
+		
+		Puzzle best = search.getBestPuzzle();
+		if (best != null) {
+			System.err.println("fewest clues: " + search.getBestClueCount());
+			System.out.println(new Board(best).toSimpleString());
+		}
+		
+		System.out.println();
+	}
+
     public void PostMessage(String message) {
         System.err.println(message);
     }
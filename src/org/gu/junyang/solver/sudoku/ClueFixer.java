@@ -0,0 +1,347 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the fewest clues to add to a puzzle of multiple solutions, for a unique solution,
+ * instead of all the guessed values of a solve.
+ *
+ * the clues are the values of a solution S. another solution T differs from S in a set of cells,
+ * an unavoidable set: unless a clue is added in it, T stays a solution. so the clues are a hitting set
+ * of the unavoidable sets, of all of them, which are not known, so they are found as they are needed:
+ * a hitting set of the sets found so far is added, and the FastSolver looks for another solution;
+ * if there is one, its set is made minimal, by a solve per cell, and added, until the solution is unique.
+ *
+ * the hitting set while sets are found is the greedy one, picking the cell hitting the most sets.
+ * then the smallest one is searched for, branching on the cells of the smallest set not hit yet,
+ * bounded by the greedy one; it may let another solution in, whose set is added, and so on.
+ * if the search takes more than HITTING_SET_NODE_LIMIT nodes, the greedy one is taken,
+ * with the clues not needed removed.
+ *
+ * a set of cells is a bitboard, bit i of the 2 longs for the cell i.
+ *
+ * usage:
+ * 	ClueFixer clueFixer = ClueFixer.of(puzzle);
+ * 	if (clueFixer != null)
+ * 		... clueFixer.getClues(), clueFixer.getFixedPuzzle() ...
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class ClueFixer {
+
+	static final int HITTING_SET_NODE_LIMIT = 100000;
+
+	final int [] masks;
+	final int [] solution;
+
+	// the unavoidable sets found
+	final ArrayList<long []> sets = new ArrayList<long []>();
+
+	// the cells of the clues to add
+	long [] clues = new long[2];
+
+	// whether the clues are a smallest hitting set of the sets found
+	boolean exact = true;
+
+	int solves;
+
+	// the hitting set search
+	long [] best;
+	int bestCount;
+	int nodes;
+
+	///////////////////////////////////
+
+	private ClueFixer(int [] masks, int [] solution) {
+		this.masks = masks;
+		this.solution = solution;
+	}
+
+	/**
+	 * @return	null if the puzzle has no solution; no clues if it has a unique one
+	 */
+	public static ClueFixer of(Puzzle puzzle) {
+		return of(puzzle, null);
+	}
+
+	/**
+	 * @param budget	e.g. of the request, null for none
+	 * @return	null if the puzzle has no solution; no clues if it has a unique one
+	 * @throws SolveLimitException	if a limit of the budget is reached
+	 */
+	public static ClueFixer of(Puzzle puzzle, SolveBudget budget) {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setBudget(budget);
+		fastSolver.setPuzzle(puzzle);
+		int [] masks = fastSolver.getMasks().clone();
+		if (fastSolver.countSolutions(1) == 0)
+			return null;
+
+		ClueFixer clueFixer = new ClueFixer(masks, fastSolver.getSolution());
+		clueFixer.fix(fastSolver);
+		return clueFixer;
+	}
+
+	private void fix(FastSolver fastSolver) {
+		while (true) {
+			// the greedy hitting sets while sets are found, which is fast,
+			// then the smallest one, which may let another solution in, so the sets found are not all yet
+			long [] set = otherSolutionSet(fastSolver, clues);
+			if (set == null) {
+				long [] smallest = smallestHittingSet();
+				if (smallest == null || count(smallest) == count(clues))
+					break;
+				set = otherSolutionSet(fastSolver, smallest);
+				if (set == null) {
+					clues = smallest;
+					break;
+				}
+			}
+			sets.add(minimize(fastSolver, set));
+			clues = greedyHittingSet();
+		}
+
+		if (!exact)
+			removeRedundantClues(fastSolver);
+	}
+
+	/**
+	 * the cells a solution other than S differs in, with the clues added; null if S is the only one
+	 */
+	private long [] otherSolutionSet(FastSolver fastSolver, long [] cells) {
+		if (fastSolver.budget != null)
+			fastSolver.budget.check();
+		fastSolver.setMasks(withClues(cells));
+		solves++;
+		if (fastSolver.countSolutions(2) < 2)
+			return null;
+
+		// one of the 2 found
+		int [] other = fastSolver.getSolution();
+		if (same(other, solution))
+			other = fastSolver.getSecondSolution();
+
+		long [] set = new long[2];
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (other[i] != solution[i])
+				add(set, i);
+		}
+		return set;
+	}
+
+	/**
+	 * a minimal unavoidable set in the set: with the other cells given their values of S,
+	 * a cell of the set is given its value too, and if there is still a solution other than S,
+	 * the cells it differs in are a smaller set
+	 */
+	private long [] minimize(FastSolver fastSolver, long [] set) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (!contains(set, i))
+				continue;
+			long [] outside = { ~set[0], ~set[1] };
+			add(outside, i);
+			long [] smaller = otherSolutionSet(fastSolver, outside);
+			if (smaller != null)
+				set = smaller;
+		}
+		return set;
+	}
+
+	///////////////////////////////////
+
+	/**
+	 * the clues to add, the values of the solution; an empty puzzle if the solution is unique
+	 */
+	public Puzzle getClues() {
+		Puzzle puzzle = new Puzzle();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (contains(clues, i))
+				puzzle.values[i / 9][i % 9] = solution[i];
+		}
+		return puzzle;
+	}
+
+	/**
+	 * the puzzle with the clues added
+	 */
+	public Puzzle getFixedPuzzle() {
+		Puzzle puzzle = new Puzzle();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (contains(clues, i) || (masks[i] & (masks[i] - 1)) == 0)
+				puzzle.values[i / 9][i % 9] = solution[i];
+		}
+		return puzzle;
+	}
+
+	public int getClueCount() {
+		return Long.bitCount(clues[0]) + Long.bitCount(clues[1]);
+	}
+
+	/**
+	 * the unavoidable sets found, one per solution ruled out
+	 */
+	public int getSetCount() {
+		return sets.size();
+	}
+
+	/**
+	 * whether the clues are known to be the fewest, false if the greedy ones were taken
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	public int getSolves() {
+		return solves;
+	}
+
+	///////////////////////////////////
+
+	// a smallest hitting set of the sets, null if the search is too long
+	private long [] smallestHittingSet() {
+		best = clues;
+		bestCount = count(best);
+		nodes = 0;
+		search(new long[2], 0);
+		if (nodes > HITTING_SET_NODE_LIMIT) {
+			exact = false;
+			return null;
+		}
+		return best;
+	}
+
+	private void search(long [] chosen, int chosenCount) {
+		if (++nodes > HITTING_SET_NODE_LIMIT)
+			return;
+
+		// the set not hit of the fewest cells, one of them has to be chosen
+		long [] branch = null;
+		int branchCount = Integer.MAX_VALUE;
+		for (long [] set : sets) {
+			if (intersects(set, chosen))
+				continue;
+			int count = count(set);
+			if (count < branchCount) {
+				branch = set;
+				branchCount = count;
+			}
+		}
+		if (branch == null) {
+			if (chosenCount < bestCount) {
+				best = chosen.clone();
+				bestCount = chosenCount;
+			}
+			return;
+		}
+		if (chosenCount + 1 >= bestCount)
+			return;
+
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (!contains(branch, i))
+				continue;
+			add(chosen, i);
+			search(chosen, chosenCount + 1);
+			remove(chosen, i);
+		}
+	}
+
+	private long [] greedyHittingSet() {
+		long [] chosen = new long[2];
+		int [] hits = new int[Board.TOTAL_CELLS];
+		while (true) {
+			Arrays.fill(hits, 0);
+			boolean allHit = true;
+			for (long [] set : sets) {
+				if (intersects(set, chosen))
+					continue;
+				allHit = false;
+				for (int i=0; i<Board.TOTAL_CELLS; i++) {
+					if (contains(set, i))
+						hits[i]++;
+				}
+			}
+			if (allHit)
+				return chosen;
+			int most = 0;
+			for (int i=1; i<Board.TOTAL_CELLS; i++) {
+				if (hits[i] > hits[most])
+					most = i;
+			}
+			add(chosen, most);
+		}
+	}
+
+	private void removeRedundantClues(FastSolver fastSolver) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (!contains(clues, i))
+				continue;
+			remove(clues, i);
+			fastSolver.setMasks(withClues(clues));
+			solves++;
+			if (fastSolver.countSolutions(2) != 1)
+				add(clues, i);
+		}
+	}
+
+	// the masks of the puzzle, with the values of the solution in the cells
+	private int [] withClues(long [] cells) {
+		int [] m = masks.clone();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (contains(cells, i))
+				m[i] = 1 << (solution[i] - 1);
+		}
+		return m;
+	}
+
+	///////////////////////////////////
+	// bitboards
+
+	static boolean contains(long [] set, int i) {
+		return (set[i >> 6] & (1L << (i & 63))) != 0;
+	}
+
+	static void add(long [] set, int i) {
+		set[i >> 6] |= 1L << (i & 63);
+	}
+
+	static void remove(long [] set, int i) {
+		set[i >> 6] &= ~(1L << (i & 63));
+	}
+
+	static boolean intersects(long [] a, long [] b) {
+		return (a[0] & b[0]) != 0 || (a[1] & b[1]) != 0;
+	}
+
+	static int count(long [] set) {
+		return Long.bitCount(set[0]) + Long.bitCount(set[1]);
+	}
+
+	private static boolean same(int [] a, int [] b) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (a[i] != b[i])
+				return false;
+		}
+		return true;
+	}
+
+}
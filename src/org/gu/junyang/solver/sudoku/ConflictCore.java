@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a conflict core of an unsolvable puzzle: a set of its clues that has no solution by itself,
+ * and does with any one of them removed, so removing any clue of the core breaks this conflict.
+ *
+ * it is found by deletion: a clue is dropped from the core if the core is still unsolvable without it,
+ * the clues tried in the order given, e.g. a random one of a seed. the unsolvability is by the FastSolver.
+ * it is a solve per clue, of a puzzle of fewer clues each time, which the FastSolver either solves,
+ * or propagates to a contradiction, quickly.
+ *
+ * a puzzle may have more than one conflict, so it may still be unsolvable with a clue of the core removed.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConflictCore {
+
+	/**
+	 * @param order	the cells to try, the set ones are the clues; a set cell not in it is kept in the core
+	 * @return	the clues of the core, in the order; null if the puzzle is solvable
+	 */
+	public static ArrayList<CellPosition> find(Puzzle puzzle, List<CellPosition> order) {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setPuzzle(puzzle);
+		if (fastSolver.countSolutions(1) != 0)
+			return null;
+
+		Puzzle core = new Puzzle(puzzle);
+		for (CellPosition position : order) {
+			int value = core.values[position.row][position.col];
+			if (value == 0)
+				continue;
+
+			core.reset(position.row, position.col);
+			fastSolver.setPuzzle(core);
+			if (fastSolver.countSolutions(1) != 0) {
+				// needed for the conflict
+				core.set(position.row, position.col, value);
+			}
+		}
+
+		ArrayList<CellPosition> clues = new ArrayList<CellPosition>();
+		for (CellPosition position : order) {
+			if (core.isSet(position.row, position.col))
+				clues.add(position);
+		}
+		return clues;
+	}
+
+}
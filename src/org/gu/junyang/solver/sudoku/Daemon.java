@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * serves newline delimited JSON requests from input streams, see RequestHandler for the requests.
+ *
+ * requests are handled concurrently by a pool of threads, with a shared RequestHandler,
+ * and the responses are written as soon as they are ready, so they may be out of the request order;
+ * a client matches them by the request ids.
+ *
+ * several streams, e.g. the connections of the SolverServer, can be served at the same time, sharing the pool.
+ * admission control:
+ * 	the number of requests in progress of a stream is bounded, the reading of the stream stops when it is reached.
+ * 	the pool queue is bounded, a request is answered "server busy" when it is full.
+ * 	a request is answered "deadline exceeded" if its deadline has passed before a thread picks it up,
+ * 	otherwise the solving stops at the deadline, see SolveLimits.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.gu.junyang.utilities.Json;
+
+public class Daemon {
+
+	Logger logger = Logger.getLogger(this.getClass());
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	final int threadCount;
+
+	// requests in progress per stream
+	int maxPendingRequests;
+
+	// in milliseconds, 0 for no deadline, a request can set its own with the "timeout" member
+	long defaultTimeout = 0;
+
+	final SolveCache solveCache;
+
+	final ThreadPoolExecutor workers;
+
+	final RequestHandler requestHandler;
+
+	final AtomicLong requestCount = new AtomicLong();
+	final AtomicLong rejectedCount = new AtomicLong();
+	final AtomicLong expiredCount = new AtomicLong();
+
+	///////////////////////////////////
+
+	/**
+	 * @param queueLimit	the number of requests waiting for a thread, of all the streams
+	 * @param solveCache	may be null
+	 */
+	public Daemon(int threadCount, int queueLimit, SolveCache solveCache) {
+		this.threadCount = threadCount;
+		this.maxPendingRequests = threadCount * 4;
+		this.solveCache = solveCache;
+		requestHandler = new RequestHandler(new SudokuService(solveCache));
+
+		workers = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueLimit));
+	}
+
+	public Daemon(int threadCount, SolveCache solveCache) {
+		this(threadCount, threadCount * 64, solveCache);
+	}
+
+	/**
+	 * serve until the end of the input, return after all responses of the stream are written.
+	 * can be called by multiple threads for different streams.
+	 */
+	public void serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+
+		final int maxPending = maxPendingRequests;
+		final Semaphore pendingRequests = new Semaphore(maxPending);
+
+		try {
+			String line;
+			while ( (line = reader.readLine()) != null ) {
+				if (line.trim().length() == 0)
+					continue;
+
+				requestCount.incrementAndGet();
+
+				final Map<String, Object> request;
+				try {
+					request = parseRequest(line);
+				} catch (Json.ParseException e) {
+					write(writer, RequestHandler.error(null, "bad request: " + e.getMessage()));
+					continue;
+				}
+
+				final long deadline = getDeadline(request);
+
+				pendingRequests.acquire();
+
+				try {
+					workers.execute(new Runnable() {
+						public void run() {
+							try {
+								Map<String, Object> response;
+								if (deadline != 0 && System.currentTimeMillis() > deadline) {
+									expiredCount.incrementAndGet();
+									response = RequestHandler.error(request.get("id"), "deadline exceeded");
+								} else
+									// the rest of the time is the limit of the solving
+									response = requestHandler.handleRequest(request, deadline);
+
+								write(writer, response);
+
+							} catch (IOException e) {
+								logger.error("failed to write response", e);
+							} finally {
+								pendingRequests.release();
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					pendingRequests.release();
+					rejectedCount.incrementAndGet();
+					write(writer, RequestHandler.error(request.get("id"), "server busy"));
+				}
+			}
+
+			logger.debug("end of requests.");
+
+		} finally {
+			// wait for the requests of the stream
+			pendingRequests.acquire(maxPending);
+			synchronized (writer) {
+				writer.flush();
+			}
+		}
+	}
+
+	/**
+	 * stop the threads, after the requests in the queue are done
+	 */
+	public void shutdown() throws InterruptedException {
+		workers.shutdown();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	///////////////////////////////////
+
+	private static Map<String, Object> parseRequest(String line) throws Json.ParseException {
+		Object request = Json.parse(line);
+		if ( ! (request instanceof Map) )
+			throw new Json.ParseException("request is not an object");
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> requestMap = (Map<String, Object>) request;
+		return requestMap;
+	}
+
+	private long getDeadline(Map<String, Object> request) {
+		long timeout = defaultTimeout;
+		Object value = request.get("timeout");
+		if (value instanceof Long)
+			timeout = (Long) value;
+
+		if (timeout <= 0)
+			return 0;
+		return System.currentTimeMillis() + timeout;
+	}
+
+	private static void write(Writer writer, Map<String, Object> response) throws IOException {
+		String line = Json.toJson(response);
+		synchronized (writer) {
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	///////////////////////////////////
+
+	public void setMaxPendingRequests(int maxPendingRequests) {
+		this.maxPendingRequests = maxPendingRequests;
+	}
+
+	public void setDefaultTimeout(long defaultTimeout) {
+		this.defaultTimeout = defaultTimeout;
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+}
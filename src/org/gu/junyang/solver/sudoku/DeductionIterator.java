@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the deduction of a board, a step at a time, computed when asked for.
+ *
+ * a step is a technique pass of the SolverNonGreedy, which stops at the first progress,
+ * so the steps are those of the board history of a SolverNonGreedy solve, without the solve.
+ * when no technique makes progress, the step is a trial and error one:
+ * the cell of the fewest candidates is given its value in a solution, found by a Solver on a copy of the board.
+ *
+ * the iteration ends when the board is solved, or when it is found to have no solution, see getMessage().
+ *
+ * usage:
+ * 	DeductionIterator deductions = new DeductionIterator(board);
+ * 	if (deductions.hasNext()) {
+ * 		DeductionStep step = deductions.next();
+ * 		Board next = deductions.getBoard();
+ * 		...
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.gu.junyang.solver.sudoku.Board.BoardException;
+import org.gu.junyang.solver.sudoku.SolveStats.Technique;
+
+public class DeductionIterator implements Iterator<DeductionStep> {
+
+	// the techniques after the cross elimination, in the order of the SolverNonGreedy
+	static final Technique [] TECHNIQUES = {
+		Technique.SINGLE_DESTINATION,
+		Technique.LIMITED_CANDIDATES_2, Technique.LIMITED_CANDIDATES_3,
+		Technique.LIMITED_DESTINATION,
+		Technique.DUAL_ROW_LIMITED_DESTINATION, Technique.DUAL_COL_LIMITED_DESTINATION,
+		Technique.XWING_ROW, Technique.XWING_COL
+	};
+
+	final SolverNonGreedy solver = new SolverNonGreedy();
+
+	// the step computed by hasNext(), not taken yet
+	DeductionStep nextStep = null;
+
+	boolean ended = false;
+	String message = null;
+
+	///////////////////////////////////
+
+	/**
+	 * @param board	it is copied, not changed
+	 * @throws BoardException	if the board has a conflict
+	 */
+	public DeductionIterator(Board board) throws BoardException {
+		solver.setBoard(new Board(board));
+		solver.setRecordTranscript(true);
+		solver.setRandomSearch(false);
+		solver.makeCellList();
+		solver.sanityCheck();
+
+		// clear the pattern and the transcript for the first step
+		solver.addToBoardHistory();
+	}
+
+	public boolean hasNext() {
+		if (nextStep == null && !ended)
+			nextStep = step();
+		return nextStep != null;
+	}
+
+	public DeductionStep next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		DeductionStep step = nextStep;
+		nextStep = null;
+		return step;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * a copy of the board, after the steps taken, and the step of hasNext() if it has been called
+	 */
+	public Board getBoard() {
+		return new Board(solver);
+	}
+
+	/**
+	 * why the iteration ended, null if it has not
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	///////////////////////////////////
+
+	/**
+	 * @return	null if the iteration ends
+	 */
+	private DeductionStep step() {
+		if (solver.unknowns == 0) {
+			end("solved.");
+			return null;
+		}
+
+		int [] candidatesBefore = new int[Board.TOTAL_CELLS];
+		int [] valuesBefore = new int[Board.TOTAL_CELLS];
+		snapshot(candidatesBefore, valuesBefore);
+
+		// one iteration of SolverNonGreedy.Solve1()
+		Technique technique = null;
+		if (solver.applyTechnique(Technique.CROSS_ELIMINATION)) {
+			technique = Technique.CROSS_ELIMINATION;
+		} else {
+			// cross eliminate from the newly set cells only, from now on
+			if (solver.newlySetCells == null)
+				solver.newlySetCells = new CellList();
+
+			for (Technique t : TECHNIQUES) {
+				if (solver.applyTechnique(t)) {
+					technique = t;
+					break;
+				}
+			}
+		}
+
+		if (technique == null) {
+			if (!guess())
+				return null;
+			technique = Technique.TRIAL_AND_ERROR;
+		}
+
+		CellList patternCells = new CellList();
+		for (Cell cell : solver.patternCellList)
+			patternCells.add(new Cell(cell));
+		int transcriptStart = solver.transcript.size();
+		solver.addToBoardHistory();
+		Transcript transcript = solver.transcript.copy(transcriptStart, solver.transcript.size());
+
+		ArrayList<SetValueAction> placements = new ArrayList<SetValueAction>();
+		ArrayList<SetValueAction> eliminations = new ArrayList<SetValueAction>();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			Cell cell = solver.sudokuCells[i / 9][i % 9];
+			if (valuesBefore[i] != 0)
+				continue;
+			if (cell.known) {
+				placements.add(new SetValueAction(cell.row, cell.col, cell.value));
+				continue;
+			}
+			int removed = candidatesBefore[i] & ~candidatesMask(cell);
+			for (int value=1; value<=9; value++) {
+				if ((removed & (1 << value)) != 0)
+					eliminations.add(new SetValueAction(cell.row, cell.col, value));
+			}
+		}
+
+		// the step is still given, the next one ends the iteration
+		try {
+			solver.checkContradiction(false);
+		} catch (BoardException e) {
+			end("conflict in puzzle detected - " + e.getMessage() + ", unsolvable");
+		}
+
+		return new DeductionStep(technique, patternCells, placements, eliminations, transcript);
+	}
+
+	/**
+	 * set the cell of the fewest candidates to its value in a solution
+	 * @return	false if there is no solution
+	 */
+	private boolean guess() {
+		Solver copy = new Solver();
+		copy.setBoard(new Board(solver));
+		copy.setRandomSearch(false);
+		copy.setNoMultipleSolutionCheck(true);
+		try {
+			copy.Solve();
+		} catch (BoardException e) {
+			end("no solution found - " + e.getMessage());
+			return false;
+		}
+		if (!copy.isSolved()) {
+			end("no solution found.");
+			return false;
+		}
+
+		Cell guessCell = null;
+		for (int row=0; row<9; row++) {
+			for (int col=0; col<9; col++) {
+				Cell cell = solver.sudokuCells[row][col];
+				if (!cell.known && (guessCell == null || cell.candidates.size() < guessCell.candidates.size()))
+					guessCell = cell;
+			}
+		}
+
+		int value = copy.getSolution(0).values[guessCell.row][guessCell.col];
+		solver.setValue(guessCell.row, guessCell.col, value);
+		solver.newlySetCells.add(guessCell);
+		solver.patternCellList.add(guessCell);
+		solver.transcript.add(Transcript.SET_VALUE, Transcript.TRIAL_AND_ERROR, guessCell.row, guessCell.col, value);
+		return true;
+	}
+
+	private void end(String message) {
+		ended = true;
+		this.message = message;
+	}
+
+	private void snapshot(int [] candidates, int [] values) {
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			Cell cell = solver.sudokuCells[i / 9][i % 9];
+			values[i] = cell.known ? cell.value : 0;
+			candidates[i] = candidatesMask(cell);
+		}
+	}
+
+	// bit i for the candidate i
+	private static int candidatesMask(Cell cell) {
+		int mask = 0;
+		for (int candidate : cell.candidates)
+			mask |= 1 << candidate;
+		return mask;
+	}
+
+}
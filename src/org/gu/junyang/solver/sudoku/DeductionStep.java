@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a step of the deduction, as given by DeductionIterator.
+ *
+ * the pattern cells are the cells the technique reasoned on, e.g. the cell set of a single destination,
+ * or the 4 corners of an X-wing, the same as the pattern cells of a board history.
+ * the placements are the values set, the eliminations are the candidates removed from cells still unknown.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+
+import org.gu.junyang.solver.sudoku.SolveStats.Technique;
+
+public class DeductionStep {
+
+	final Technique technique;
+	final CellList patternCells;
+	final ArrayList<SetValueAction> placements;
+	final ArrayList<SetValueAction> eliminations;
+
+	// the transcript entries of the step, the last one is the step itself
+	final Transcript transcript;
+
+	DeductionStep(Technique technique, CellList patternCells, ArrayList<SetValueAction> placements,
+			ArrayList<SetValueAction> eliminations, Transcript transcript) {
+		this.technique = technique;
+		this.patternCells = patternCells;
+		this.placements = placements;
+		this.eliminations = eliminations;
+		this.transcript = transcript;
+	}
+
+	public Technique getTechnique() {
+		return technique;
+	}
+
+	public int getLevel() {
+		return technique.getLevel();
+	}
+
+	public CellList getPatternCells() {
+		return patternCells;
+	}
+
+	public ArrayList<SetValueAction> getPlacements() {
+		return placements;
+	}
+
+	public ArrayList<SetValueAction> getEliminations() {
+		return eliminations;
+	}
+
+	public Transcript getTranscript() {
+		return transcript;
+	}
+
+	@Override
+	public String toString() {
+		return technique + " (" + getLevel() + "): placements: " + placements + ", eliminations: " + eliminations;
+	}
+
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a solution counter on bitmasks, for the checks that only need to know whether there are 0, 1 or more solutions,
+ * not how a person would solve it: no techniques, no transcript, no board history, no serialization.
+ *
+ * a cell is a mask of its candidates, bit v-1 for the value v, a known cell has a single bit.
+ * the propagation is the naked singles and the hidden singles, then the search tries the values of
+ * the cell of the fewest candidates, on a copy of the masks of each level, preallocated, so there is no allocation.
+ *
+ * the search stops, as not finished, if the thread is interrupted, e.g. a check cancelled.
+ * with a SolveBudget, its deadline and cancellation are checked as well, and a SolveLimitException is thrown;
+ * the nodes here are not counted in the budget, as they are much cheaper than those of the Solver.
+ *
+ * usage:
+ * 	FastSolver fastSolver = new FastSolver();
+ * 	fastSolver.setBoard(board);
+ * 	int solutions = fastSolver.countSolutions(2);
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+public class FastSolver {
+
+	public static final int ALL = 0x1ff;
+
+	// the cells of the 27 units, the rows, the columns and the blocks
+	static final int [][] UNITS = new int[27][9];
+
+	// the 20 cells sharing a unit with a cell
+	static final int [][] PEERS = new int[Board.TOTAL_CELLS][20];
+
+	static {
+		for (int i=0; i<9; i++) {
+			for (int j=0; j<9; j++) {
+				UNITS[i][j] = i * 9 + j;
+				UNITS[9 + i][j] = j * 9 + i;
+				UNITS[18 + i][j] = (i / 3 * 3 + j / 3) * 9 + i % 3 * 3 + j % 3;
+			}
+		}
+		for (int cell=0; cell<Board.TOTAL_CELLS; cell++) {
+			int count = 0;
+			for (int peer=0; peer<Board.TOTAL_CELLS; peer++) {
+				if (peer != cell && isPeer(cell, peer))
+					PEERS[cell][count++] = peer;
+			}
+		}
+	}
+
+	// how often the thread is checked for an interrupt, in search nodes
+	static final int INTERRUPT_CHECK_INTERVAL = 1024;
+
+	// the masks of the search levels, level 0 is the one set
+	final int [][] levels = new int[Board.TOTAL_CELLS + 1][Board.TOTAL_CELLS];
+
+	// the cells to propagate, as a stack
+	final int [] queue = new int[Board.TOTAL_CELLS * 9];
+
+	// the first two solutions found, the values
+	int [] solution;
+	int [] secondSolution;
+
+	int solutionCount;
+	int limit;
+	long nodes;
+	boolean interrupted;
+
+	// null for none
+	SolveBudget budget;
+
+	///////////////////////////////////
+
+	/**
+	 * the known values of the board, and the candidates of the unknown cells
+	 */
+	public void setBoard(Board board) {
+		setMasks(getMasks(board, true));
+	}
+
+	public void setPuzzle(Puzzle puzzle) {
+		int [] masks = levels[0];
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			int value = puzzle.values[i / 9][i % 9];
+			masks[i] = value == 0 ? ALL : 1 << (value - 1);
+		}
+	}
+
+	/**
+	 * @param masks	a mask of each cell, bit v-1 for the value v, it is copied
+	 */
+	public void setMasks(int [] masks) {
+		System.arraycopy(masks, 0, levels[0], 0, Board.TOTAL_CELLS);
+	}
+
+	/**
+	 * the masks set are propagated in place
+	 * @param limit	the count to stop at, e.g. 2 to tell a unique solution from multiple ones
+	 * @return	the solutions found, up to the limit; check isInterrupted() if it can be cancelled
+	 */
+	public int countSolutions(int limit) {
+		this.limit = limit;
+		solutionCount = 0;
+		solution = null;
+		secondSolution = null;
+		nodes = 0;
+		interrupted = false;
+
+		if (propagate())
+			search(0);
+		return solutionCount;
+	}
+
+	/**
+	 * propagate the masks set, in place, with no search
+	 * @return	false if a contradiction is found
+	 */
+	public boolean propagate() {
+		int [] masks = levels[0];
+		int top = 0;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (masks[i] == 0)
+				return false;
+			if (Integer.bitCount(masks[i]) == 1)
+				queue[top++] = i;
+		}
+		return propagate(masks, top);
+	}
+
+	/**
+	 * whether setting a value, and propagating, gives no contradiction, with no search;
+	 * the masks set are not changed, so a value after another can be probed
+	 */
+	public boolean probe(int cell, int value) {
+		int [] masks = levels[1];
+		System.arraycopy(levels[0], 0, masks, 0, Board.TOTAL_CELLS);
+		int bit = 1 << (value - 1);
+		if ((masks[cell] & bit) == 0)
+			return false;
+		masks[cell] = bit;
+		queue[0] = cell;
+		return propagate(masks, 1);
+	}
+
+	/**
+	 * the masks set, propagated by propagate() or countSolutions()
+	 */
+	public int [] getMasks() {
+		return levels[0];
+	}
+
+	/**
+	 * the values of the first solution found, by cell index, row * 9 + col; null if none
+	 */
+	public int [] getSolution() {
+		return solution;
+	}
+
+	/**
+	 * the values of the second solution found, if the limit is more than 1; null if none
+	 */
+	public int [] getSecondSolution() {
+		return secondSolution;
+	}
+
+	/**
+	 * whether the last count was stopped by an interrupt, so its result is not to be used
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @param budget	checked with the interrupt, null for none
+	 */
+	public void setBudget(SolveBudget budget) {
+		this.budget = budget;
+	}
+
+	///////////////////////////////////
+
+	private void search(int level) {
+		if (++nodes % INTERRUPT_CHECK_INTERVAL == 0) {
+			if (budget != null)
+				budget.check();
+			if (Thread.currentThread().isInterrupted()) {
+				interrupted = true;
+				return;
+			}
+		}
+
+		int [] masks = levels[level];
+
+		// the cell of the fewest candidates
+		int best = -1;
+		int bestCount = 10;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			int count = Integer.bitCount(masks[i]);
+			if (count > 1 && count < bestCount) {
+				best = i;
+				bestCount = count;
+				if (count == 2)
+					break;
+			}
+		}
+
+		if (best == -1) {
+			if (solutionCount < 2) {
+				int [] values = new int[Board.TOTAL_CELLS];
+				for (int i=0; i<Board.TOTAL_CELLS; i++)
+					values[i] = Integer.numberOfTrailingZeros(masks[i]) + 1;
+				if (solutionCount == 0)
+					solution = values;
+				else
+					secondSolution = values;
+			}
+			solutionCount++;
+			return;
+		}
+
+		int [] next = levels[level + 1];
+		for (int rest = masks[best]; rest != 0; rest &= rest - 1) {
+			System.arraycopy(masks, 0, next, 0, Board.TOTAL_CELLS);
+			next[best] = rest & -rest;
+			queue[0] = best;
+			if (propagate(next, 1))
+				search(level + 1);
+			if (solutionCount >= limit || interrupted)
+				return;
+		}
+	}
+
+	/**
+	 * remove the values of the singles from their peers, and set the hidden singles, until nothing changes
+	 * @param top	the singles to propagate, in the queue
+	 * @return	false if a contradiction is found
+	 */
+	private boolean propagate(int [] masks, int top) {
+		while (true) {
+			while (top > 0) {
+				int cell = queue[--top];
+				int bit = masks[cell];
+				for (int peer : PEERS[cell]) {
+					int mask = masks[peer];
+					if ((mask & bit) == 0)
+						continue;
+					mask &= ~bit;
+					if (mask == 0)
+						return false;
+					masks[peer] = mask;
+					if ((mask & (mask - 1)) == 0)
+						queue[top++] = peer;
+				}
+			}
+
+			// hidden singles
+			for (int [] unit : UNITS) {
+				int once = 0;
+				int more = 0;
+				int known = 0;
+				for (int cell : unit) {
+					int mask = masks[cell];
+					more |= once & mask;
+					once |= mask;
+					if ((mask & (mask - 1)) == 0)
+						known |= mask;
+				}
+				if (once != ALL)
+					return false;
+				int hidden = once & ~more & ~known;
+				for (; hidden != 0; hidden &= hidden - 1) {
+					int bit = hidden & -hidden;
+					for (int cell : unit) {
+						if ((masks[cell] & bit) != 0) {
+							masks[cell] = bit;
+							queue[top++] = cell;
+							break;
+						}
+					}
+				}
+			}
+			if (top == 0)
+				return true;
+		}
+	}
+
+	/**
+	 * the masks of the cells of a board, for setMasks(), e.g. taken on one thread and solved on another
+	 * @param useCandidates	if false, an unknown cell allows any value, as in the puzzle of the board
+	 */
+	public static int [] getMasks(Board board, boolean useCandidates) {
+		int [] masks = new int[Board.TOTAL_CELLS];
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			Cell cell = board.sudokuCells[i / 9][i % 9];
+			if (cell.known) {
+				masks[i] = 1 << (cell.value - 1);
+			} else if (!useCandidates) {
+				masks[i] = ALL;
+			} else {
+				int mask = 0;
+				for (int candidate : cell.candidates)
+					mask |= 1 << (candidate - 1);
+				masks[i] = mask;
+			}
+		}
+		return masks;
+	}
+
+	static boolean isPeer(int a, int b) {
+		int rowA = a / 9, colA = a % 9, rowB = b / 9, colB = b % 9;
+		return rowA == rowB || colA == colB || (rowA / 3 == rowB / 3 && colA / 3 == colB / 3);
+	}
+
+}
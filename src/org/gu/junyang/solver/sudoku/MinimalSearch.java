@@ -0,0 +1,426 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a search for the puzzles of the fewest clues of a solution grid, of many attempts, in parallel.
+ *
+ * the clues of a puzzle of a unique solution are a hitting set of the unavoidable sets of the grid.
+ * an attempt starts from no clues, and adds a cell of the smallest set not hit, the one hitting the most sets
+ * not hit, random among the equal ones, until all the sets are hit; then the FastSolver checks the solution
+ * is unique, if not, the cells the other solution differs in are a new set, and more clues are added.
+ * then the clues are removed in a random order, a removal leaving a set not hit is rejected with no solve,
+ * otherwise a FastSolver check tells whether it is kept, and learns a set if not.
+ * unlike Sudoku.reduce(), there is no Solver, no board serialization, and the sets learned are reused
+ * by the later attempts of the worker.
+ *
+ * the attempt i uses the random seed of the search plus i, so a search is repeatable with 1 thread.
+ * if a checkpoint file is set, the attempts done and the best puzzle are saved in it every CHECKPOINT_INTERVAL
+ * attempts, and a search of the same grid and seed resumes from it. with more threads, the attempts
+ * finishing out of order, a few around the checkpoint may be redone or skipped when resumed.
+ *
+ * usage:
+ * 	MinimalSearch search = new MinimalSearch(solution, seed);
+ * 	search.setCheckpointFile(file);
+ * 	search.run(threads, attempts, deadline);
+ * 	... search.getBestPuzzle(), search.getBestClueCount() ...
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.gu.junyang.utilities.Json;
+
+public class MinimalSearch {
+
+	static Logger logger = Logger.getLogger(MinimalSearch.class);
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// no puzzle of fewer clues has a unique solution, the search stops at it
+	public static final int FEWEST_CLUES = 17;
+
+	static final int CHECKPOINT_INTERVAL = 100;
+
+	final int [] solution;
+	final long seed;
+
+	final UnavoidableSets unavoidableSets;
+
+	File checkpointFile;
+
+	// the next attempt to start, and the attempts done
+	final AtomicLong nextAttempt = new AtomicLong();
+	final AtomicLong attemptsDone = new AtomicLong();
+
+	// the best so far, guarded by this
+	long [] best;
+	int bestCount = Integer.MAX_VALUE;
+
+	// the puzzles found by their clue counts, guarded by this
+	final int [] clueCounts = new int[Board.TOTAL_CELLS + 1];
+
+	///////////////////////////////////
+
+	/**
+	 * @param solution	the values of the grid, by cell index
+	 */
+	public MinimalSearch(int [] solution, long seed) {
+		this.solution = solution;
+		this.seed = seed;
+		unavoidableSets = UnavoidableSets.of(solution);
+	}
+
+	/**
+	 * the grid of the first solution of a puzzle; null if none
+	 */
+	public static int [] solve(Puzzle puzzle) {
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setPuzzle(puzzle);
+		fastSolver.countSolutions(1);
+		return fastSolver.getSolution();
+	}
+
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * run until the attempts are done, the deadline, or a puzzle of FEWEST_CLUES is found
+	 * @param attempts	the attempts of the search, including those of the checkpoint resumed
+	 * @param deadline	System.currentTimeMillis() to stop at, 0 for none
+	 */
+	public void run(int threads, final long attempts, final long deadline) throws IOException, InterruptedException {
+		if (checkpointFile != null && checkpointFile.exists())
+			readCheckpoint();
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int i=0; i<threads; i++) {
+				futures.add(workers.submit(new Runnable() {
+					public void run() {
+						Worker worker = new Worker();
+						long attempt;
+						while ((attempt = nextAttempt.getAndIncrement()) < attempts) {
+							if (deadline != 0 && System.currentTimeMillis() >= deadline)
+								break;
+							if (getBestClueCount() <= FEWEST_CLUES || Thread.currentThread().isInterrupted())
+								break;
+							worker.attempt(attempt);
+							if (attemptsDone.incrementAndGet() % CHECKPOINT_INTERVAL == 0)
+								checkpoint();
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+
+		if (checkpointFile != null)
+			writeCheckpoint();
+	}
+
+	///////////////////////////////////
+
+	public synchronized int getBestClueCount() {
+		return bestCount;
+	}
+
+	/**
+	 * null if no attempt is done
+	 */
+	public synchronized Puzzle getBestPuzzle() {
+		if (best == null)
+			return null;
+		Puzzle puzzle = new Puzzle();
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (ClueFixer.contains(best, i))
+				puzzle.values[i / 9][i % 9] = solution[i];
+		}
+		return puzzle;
+	}
+
+	public long getAttemptsDone() {
+		return attemptsDone.get();
+	}
+
+	/**
+	 * the attempts of this run, and of the checkpoint resumed, by the clue counts found, from the fewest
+	 */
+	public synchronized Map<Integer, Integer> getClueCounts() {
+		LinkedHashMap<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+		for (int i=0; i<clueCounts.length; i++) {
+			if (clueCounts[i] != 0)
+				counts.put(i, clueCounts[i]);
+		}
+		return counts;
+	}
+
+	public int getUnavoidableSetCount() {
+		return unavoidableSets.size();
+	}
+
+	private synchronized void found(long [] clues) {
+		int count = ClueFixer.count(clues);
+		clueCounts[count]++;
+		if (count < bestCount) {
+			best = clues.clone();
+			bestCount = count;
+			logger.info("found a puzzle of " + count + " clues");
+		}
+	}
+
+	///////////////////////////////////
+
+	/**
+	 * an attempt at a time, of a thread, with its FastSolver and the sets it has learned
+	 */
+	class Worker {
+
+		final FastSolver fastSolver = new FastSolver();
+
+		// the sets, of the index and learned
+		final ArrayList<long []> sets = new ArrayList<long []>();
+
+		final int [] hits = new int[Board.TOTAL_CELLS];
+		final int [] ties = new int[Board.TOTAL_CELLS];
+		final int [] masks = new int[Board.TOTAL_CELLS];
+
+		Worker() {
+			for (int i=0; i<unavoidableSets.size(); i++)
+				sets.add(new long [] { unavoidableSets.lows[i], unavoidableSets.highs[i] });
+		}
+
+		void attempt(long attempt) {
+			Random random = new Random(seed + attempt);
+			long [] clues = new long[2];
+
+			// a hitting set of a unique solution
+			while (true) {
+				addHittingClues(clues, random);
+				long [] set = otherSolutionSet(clues);
+				if (set == null)
+					break;
+				sets.add(set);
+			}
+
+			// remove the clues not needed
+			int [] order = new int[ClueFixer.count(clues)];
+			int n = 0;
+			for (int i=0; i<Board.TOTAL_CELLS; i++) {
+				if (ClueFixer.contains(clues, i))
+					order[n++] = i;
+			}
+			for (int i=order.length - 1; i>0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+			for (int cell : order) {
+				ClueFixer.remove(clues, cell);
+				if (!hitsAll(clues)) {
+					ClueFixer.add(clues, cell);
+					continue;
+				}
+				long [] set = otherSolutionSet(clues);
+				if (set != null) {
+					sets.add(set);
+					ClueFixer.add(clues, cell);
+				}
+			}
+
+			found(clues);
+		}
+
+		private boolean hitsAll(long [] clues) {
+			for (long [] set : sets) {
+				if (!ClueFixer.intersects(set, clues))
+					return false;
+			}
+			return true;
+		}
+
+		// add a cell of the smallest set not hit, hitting the most sets not hit, until all are hit
+		private void addHittingClues(long [] clues, Random random) {
+			while (true) {
+				long [] smallest = null;
+				int smallestCount = Integer.MAX_VALUE;
+				Arrays.fill(hits, 0);
+				for (long [] set : sets) {
+					if (ClueFixer.intersects(set, clues))
+						continue;
+					int count = ClueFixer.count(set);
+					if (count < smallestCount) {
+						smallest = set;
+						smallestCount = count;
+					}
+					for (long bits = set[0]; bits != 0; bits &= bits - 1)
+						hits[Long.numberOfTrailingZeros(bits)]++;
+					for (long bits = set[1]; bits != 0; bits &= bits - 1)
+						hits[64 + Long.numberOfTrailingZeros(bits)]++;
+				}
+				if (smallest == null)
+					return;
+
+				int most = 0;
+				int tieCount = 0;
+				for (int i=0; i<Board.TOTAL_CELLS; i++) {
+					if (!ClueFixer.contains(smallest, i))
+						continue;
+					if (hits[i] > most) {
+						most = hits[i];
+						tieCount = 0;
+					}
+					if (hits[i] == most)
+						ties[tieCount++] = i;
+				}
+				ClueFixer.add(clues, ties[random.nextInt(tieCount)]);
+			}
+		}
+
+		// the cells a solution other than the grid differs in, with the clues; null if the grid is the only one
+		private long [] otherSolutionSet(long [] clues) {
+			for (int i=0; i<Board.TOTAL_CELLS; i++)
+				masks[i] = ClueFixer.contains(clues, i) ? 1 << (solution[i] - 1) : FastSolver.ALL;
+			fastSolver.setMasks(masks);
+			if (fastSolver.countSolutions(2) < 2)
+				return null;
+
+			int [] other = fastSolver.getSolution();
+			for (int i=0; i<Board.TOTAL_CELLS; i++) {
+				if (other[i] != solution[i])
+					break;
+				if (i == Board.TOTAL_CELLS - 1)
+					other = fastSolver.getSecondSolution();
+			}
+
+			long [] set = new long[2];
+			for (int i=0; i<Board.TOTAL_CELLS; i++) {
+				if (other[i] != solution[i])
+					ClueFixer.add(set, i);
+			}
+			return set;
+		}
+	}
+
+	///////////////////////////////////
+	// checkpoint
+
+	private synchronized void checkpoint() {
+		if (checkpointFile == null)
+			return;
+		try {
+			writeCheckpoint();
+		} catch (IOException e) {
+			logger.warn("can not write checkpoint " + checkpointFile + " - " + e.getMessage());
+		}
+	}
+
+	// written to a temporary file first, so a kill leaves the last one whole
+	private synchronized void writeCheckpoint() throws IOException {
+		LinkedHashMap<String, Object> state = new LinkedHashMap<String, Object>();
+		state.put("grid", gridString());
+		state.put("seed", seed);
+		state.put("attempts", attemptsDone.get());
+		state.put("best", best == null ? null : getBestPuzzle().toString().replaceAll("\\s", ""));
+		ArrayList<Object> counts = new ArrayList<Object>();
+		for (int count : clueCounts)
+			counts.add(count);
+		state.put("clueCounts", counts);
+
+		File tmp = new File(checkpointFile.getPath() + ".tmp");
+		Files.write(tmp.toPath(), (Json.toJson(state) + "\n").getBytes(UTF8));
+		Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void readCheckpoint() throws IOException {
+		String text = new String(Files.readAllBytes(checkpointFile.toPath()), UTF8);
+		Map<?, ?> state;
+		try {
+			Object parsed = Json.parse(text.trim());
+			if ( ! (parsed instanceof Map) )
+				throw new IOException("checkpoint is not an object: " + checkpointFile);
+			state = (Map<?, ?>) parsed;
+		} catch (Json.ParseException e) {
+			throw new IOException("bad checkpoint " + checkpointFile + " - " + e.getMessage());
+		}
+
+		if ( ! gridString().equals(state.get("grid")) || ! Long.valueOf(seed).equals(state.get("seed")) ) {
+			logger.warn("checkpoint " + checkpointFile + " is of another grid or seed, not resumed");
+			return;
+		}
+
+		long attempts = ((Number) state.get("attempts")).longValue();
+		nextAttempt.set(attempts);
+		attemptsDone.set(attempts);
+
+		Object bestString = state.get("best");
+		if (bestString != null) {
+			best = new long[2];
+			for (int i=0; i<Board.TOTAL_CELLS; i++) {
+				if (((String) bestString).charAt(i) != '.')
+					ClueFixer.add(best, i);
+			}
+			bestCount = ClueFixer.count(best);
+		}
+
+		Object counts = state.get("clueCounts");
+		if (counts instanceof List) {
+			List<?> list = (List<?>) counts;
+			for (int i=0; i<list.size() && i<clueCounts.length; i++)
+				clueCounts[i] = ((Number) list.get(i)).intValue();
+		}
+
+		System.err.println("resumed from checkpoint " + checkpointFile + ": " + attempts + " attempts, best "
+				+ (best == null ? "none" : bestCount + " clues"));
+	}
+
+	private String gridString() {
+		StringBuilder sb = new StringBuilder();
+		for (int value : solution)
+			sb.append(value);
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the performance regression check.
+ *
+ * fixed workloads of solve, reduce and generate, all seeded, are run for some rounds after a warmup.
+ * per workload, the latency percentiles of an operation, the bytes allocated per operation,
+ * and the nodes and guesses of the search are measured.
+ *
+ * the first run, or a run with --record, writes the measurements to the baseline file;
+ * the other runs compare with it, and exit with 1 if a metric is worse than the baseline by more than its threshold.
+ * the nodes and guesses do not depend on the machine, a change of them is a change of the search;
+ * the times and the allocation do, so a baseline is only good for the machine it was recorded on.
+ *
+ * usage: [options]
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.gu.junyang.utilities.BenchmarkRunner;
+import org.gu.junyang.utilities.Json;
+import org.gu.junyang.utilities.MessagePoster;
+import org.gu.junyang.utilities.ProgramErrorException;
+
+public class PerformanceCheck {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final int REDUCE_PUZZLES = 8;
+	static final int GENERATE_SEEDS = 16;
+
+	// the metrics compared with the baseline, and the default thresholds, as the fraction a metric may grow by
+	static final String [] METRICS = { "p50Nanos", "p90Nanos", "bytesPerOp", "nodes", "guesses" };
+	static final double [] DEFAULT_THRESHOLDS = { 0.5, 0.5, 0.2, 0.0, 0.0 };
+
+	// reported, not compared, they are too noisy over a few rounds
+	static final String [] REPORTED_METRICS = { "p99Nanos", "maxNanos" };
+
+	String puzzleDir = "../sample_puzzles";
+	String baselineFile = "performance_baseline.json";
+	boolean record = false;
+	int warmupRounds = 1;
+	int rounds = 3;
+	double [] thresholds = DEFAULT_THRESHOLDS.clone();
+
+	// for the allocation counter
+	final BenchmarkRunner benchmarkRunner = new BenchmarkRunner();
+
+	static final MessagePoster quiet = new MessagePoster() {
+		public void PostMessage(String message) {
+		}
+	};
+
+	/**
+	 * a workload is a list of operations, measured one by one
+	 */
+	static abstract class Workload {
+		final String name;
+
+		Workload(String name) {
+			this.name = name;
+		}
+
+		abstract int size();
+
+		/**
+		 * do the i-th operation
+		 * @return	the Sudoku of the operation, for the nodes and the guesses
+		 */
+		abstract Sudoku run(int i) throws ProgramErrorException;
+	}
+
+	///////////////////////////////////
+
+	public static void main(String [] args) throws Exception
+	{
+		// the solvers log at info level for every solve
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		PerformanceCheck check = new PerformanceCheck();
+
+		System.exit(check.execute(args));
+	}
+
+	void PrintHelp()
+	{
+		System.err.println("usage: [options]");
+		System.err.println("\t--baseline file: default is performance_baseline.json");
+		System.err.println("\t--record: record the baseline, even if there is one");
+		System.err.println("\t--dir directory: of the sample puzzles, default is ../sample_puzzles");
+		System.err.println("\t--warmup n: warmup rounds, default is 1");
+		System.err.println("\t--rounds n: measurement rounds, default is 3");
+		System.err.println("\t--threshold metric fraction: how much a metric may grow, one of " + Arrays.toString(METRICS));
+		System.err.println("\t\tdefaults: " + Arrays.toString(DEFAULT_THRESHOLDS));
+		System.exit(1);
+	}
+
+	void ParseArguments(String [] args)
+	{
+		for (int i=0; i<args.length; i++)
+		{
+			String s = args[i];
+			if (i+1 < args.length && s.equals("--baseline")) {
+				baselineFile = args[++i];
+			} else if (s.equals("--record")) {
+				record = true;
+			} else if (i+1 < args.length && s.equals("--dir")) {
+				puzzleDir = args[++i];
+			} else if (i+1 < args.length && s.equals("--warmup")) {
+				warmupRounds = Integer.parseInt(args[++i]);
+			} else if (i+1 < args.length && s.equals("--rounds")) {
+				rounds = Integer.parseInt(args[++i]);
+			} else if (i+2 < args.length && s.equals("--threshold")) {
+				int m = Arrays.asList(METRICS).indexOf(args[++i]);
+				if (m < 0)
+					PrintHelp();
+				thresholds[m] = Double.parseDouble(args[++i]);
+			} else
+				PrintHelp();
+		}
+	}
+
+	/**
+	 * @return	the exit code, 1 if there is a regression
+	 */
+	private int execute(String[] args) throws Exception {
+		ParseArguments(args);
+
+		Map<String, Map<String, Object>> measurements = new LinkedHashMap<String, Map<String, Object>>();
+		for (Workload workload : getWorkloads()) {
+			Map<String, Object> measurement = measure(workload);
+			measurements.put(workload.name, measurement);
+			System.err.println(workload.name + ": " + Json.toJson(measurement));
+		}
+
+		File file = new File(baselineFile);
+		if (record || !file.exists()) {
+			writeBaseline(file, measurements);
+			System.err.println("baseline recorded: " + baselineFile);
+			return 0;
+		}
+
+		return compare(readBaseline(file), measurements) ? 0 : 1;
+	}
+
+	///////////////////////////////////
+
+	private List<Workload> getWorkloads() throws IOException {
+		ArrayList<Workload> workloads = new ArrayList<Workload>();
+
+		for (String fileName : new String [] { "medium", "hard", "wikiHard.txt" }) {
+			final ArrayList<Puzzle> puzzles = readPuzzles(fileName);
+			final Sudoku sudoku = newSudoku(new SeededSolverFactory());
+			sudoku.setRandomSearch(false);
+			workloads.add(new Workload("solve." + fileName) {
+				int size() {
+					return puzzles.size();
+				}
+				Sudoku run(int i) {
+					sudoku.solve(puzzles.get(i));
+					return sudoku;
+				}
+			});
+		}
+
+		final ArrayList<Puzzle> hardPuzzles = readPuzzles("hard");
+		final SeededSolverFactory reduceSolverFactory = new SeededSolverFactory();
+		final Sudoku reduceSudoku = newSudoku(reduceSolverFactory);
+		workloads.add(new Workload("reduce.hard") {
+			int size() {
+				return Math.min(REDUCE_PUZZLES, hardPuzzles.size());
+			}
+			Sudoku run(int i) throws ProgramErrorException {
+				reduceSudoku.setRandomSeed(i + 1);
+				reduceSolverFactory.seed = i + 1;
+				reduceSudoku.reduce(hardPuzzles.get(i));
+				return reduceSudoku;
+			}
+		});
+
+		final SeededSolverFactory generateSolverFactory = new SeededSolverFactory();
+		final Sudoku generateSudoku = newSudoku(generateSolverFactory);
+		workloads.add(new Workload("generate") {
+			int size() {
+				return GENERATE_SEEDS;
+			}
+			Sudoku run(int i) throws ProgramErrorException {
+				generateSudoku.setRandomSeed(i + 1);
+				generateSolverFactory.seed = i + 1;
+				generateSudoku.generatePuzzle(quiet);
+				return generateSudoku;
+			}
+		});
+
+		return workloads;
+	}
+
+	private Sudoku newSudoku(SolverFactory solverFactory) {
+		Sudoku sudoku = new Sudoku();
+		sudoku.setSolverFactory(solverFactory);
+		sudoku.setUsePooledSolver(true);
+		sudoku.setUseRandomSeed(true);
+		return sudoku;
+	}
+
+	/**
+	 * the solvers are seeded, also those Sudoku does not seed, of isSolvable and reduce,
+	 * so the nodes and guesses are the same each run
+	 */
+	static class SeededSolverFactory extends SolverFactory {
+
+		long seed = 1;
+
+		SeededSolverFactory() {
+			super(SolverFactory.solverClassName);
+		}
+
+		@Override
+		public Solver newSolver() {
+			Solver solver = super.newSolver();
+			solver.setRandomSeed(seed);
+			return solver;
+		}
+
+		@Override
+		public Solver getPooledSolver() {
+			Solver solver = super.getPooledSolver();
+			solver.setRandomSeed(seed);
+			return solver;
+		}
+	}
+
+	/**
+	 * run the rounds of a workload
+	 */
+	private Map<String, Object> measure(Workload workload) throws ProgramErrorException {
+		for (int r=0; r<warmupRounds; r++) {
+			for (int i=0; i<workload.size(); i++)
+				workload.run(i);
+		}
+
+		int operations = rounds * workload.size();
+		long [] latencies = new long[operations];
+		long bytes = 0;
+		long nodes = 0;
+		long guesses = 0;
+		int op = 0;
+		for (int r=0; r<rounds; r++) {
+			for (int i=0; i<workload.size(); i++) {
+				long allocated = benchmarkRunner.getAllocatedBytes();
+				long start = System.nanoTime();
+				Sudoku sudoku = workload.run(i);
+				latencies[op++] = System.nanoTime() - start;
+				bytes += benchmarkRunner.getAllocatedBytes() - allocated;
+
+				// the same every round
+				if (r == 0) {
+					nodes += sudoku.getBudget().getNodes();
+					guesses += sudoku.getBudget().getGuesses();
+				}
+			}
+		}
+
+		Arrays.sort(latencies);
+
+		Map<String, Object> measurement = new LinkedHashMap<String, Object>();
+		measurement.put("operations", operations);
+		measurement.put("p50Nanos", percentile(latencies, 50));
+		measurement.put("p90Nanos", percentile(latencies, 90));
+		measurement.put("p99Nanos", percentile(latencies, 99));
+		measurement.put("maxNanos", latencies[operations - 1]);
+		measurement.put("bytesPerOp", benchmarkRunner.getAllocatedBytes() < 0 ? -1 : bytes / operations);
+		measurement.put("nodes", nodes);
+		measurement.put("guesses", guesses);
+		return measurement;
+	}
+
+	// nearest rank, of sorted values
+	static long percentile(long [] sorted, double percent) {
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * print the metrics against the baseline
+	 * @return	false if there is a regression
+	 */
+	private boolean compare(Map<String, Object> baseline, Map<String, Map<String, Object>> measurements) {
+		boolean pass = true;
+		for (Map.Entry<String, Map<String, Object>> entry : measurements.entrySet()) {
+			Object base = baseline.get(entry.getKey());
+			if ( ! (base instanceof Map) ) {
+				System.out.println(entry.getKey() + ": not in the baseline");
+				continue;
+			}
+			Map<?, ?> baseMeasurement = (Map<?, ?>) base;
+
+			for (int m=0; m<METRICS.length; m++) {
+				String metric = METRICS[m];
+				long value = ((Number) entry.getValue().get(metric)).longValue();
+				Object baseValue = baseMeasurement.get(metric);
+				if ( ! (baseValue instanceof Number) || ((Number) baseValue).longValue() < 0 || value < 0)
+					continue;
+
+				long limit = (long) Math.floor(((Number) baseValue).longValue() * (1 + thresholds[m]));
+				boolean regressed = value > limit;
+				if (regressed)
+					pass = false;
+				System.out.printf("%-20s %-12s %14d %14d %+8.1f%% %s\n", entry.getKey(), metric,
+						((Number) baseValue).longValue(), value, change(((Number) baseValue).longValue(), value),
+						regressed ? "REGRESSION" : "ok");
+			}
+			for (String metric : REPORTED_METRICS) {
+				Object baseValue = baseMeasurement.get(metric);
+				if (baseValue instanceof Number) {
+					long value = ((Number) entry.getValue().get(metric)).longValue();
+					System.out.printf("%-20s %-12s %14d %14d %+8.1f%%\n", entry.getKey(), metric,
+							((Number) baseValue).longValue(), value, change(((Number) baseValue).longValue(), value));
+				}
+			}
+		}
+
+		System.out.println(pass ? "no regression." : "regression found.");
+		return pass;
+	}
+
+	private static double change(long base, long value) {
+		if (base == 0)
+			return value == 0 ? 0 : 100;
+		return (value - base) * 100.0 / base;
+	}
+
+	///////////////////////////////////
+
+	// one workload per line, for diffs
+	private void writeBaseline(File file, Map<String, Map<String, Object>> measurements) throws IOException {
+		StringBuilder sb = new StringBuilder("{\n");
+		sb.append("\"java\": ").append(Json.toJson(System.getProperty("java.version"))).append(",\n");
+		int i = 0;
+		for (Map.Entry<String, Map<String, Object>> entry : measurements.entrySet()) {
+			sb.append(Json.toJson(entry.getKey())).append(": ").append(Json.toJson(entry.getValue()));
+			sb.append(++i < measurements.size() ? ",\n" : "\n");
+		}
+		sb.append("}\n");
+		Files.write(file.toPath(), sb.toString().getBytes(UTF8));
+	}
+
+	private Map<String, Object> readBaseline(File file) throws IOException {
+		String text = new String(Files.readAllBytes(file.toPath()), UTF8);
+		try {
+			Object baseline = Json.parse(text.trim());
+			if ( ! (baseline instanceof Map) )
+				throw new IOException("baseline is not an object: " + file);
+			@SuppressWarnings("unchecked")
+			Map<String, Object> baselineMap = (Map<String, Object>) baseline;
+			return baselineMap;
+		} catch (Json.ParseException e) {
+			throw new IOException("bad baseline " + file + " - " + e.getMessage());
+		}
+	}
+
+	ArrayList<Puzzle> readPuzzles(String fileName) throws IOException {
+		PuzzleCorpus corpus = new PuzzleCorpus(new File(puzzleDir, fileName).getPath(), true);
+		ArrayList<Puzzle> puzzles = new ArrayList<Puzzle>();
+		try {
+			for (long i=0; i<corpus.size(); i++)
+				puzzles.add(corpus.get(i).toPuzzle());
+		} finally {
+			corpus.close();
+		}
+		return puzzles;
+	}
+
+}
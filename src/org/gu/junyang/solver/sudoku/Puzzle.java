@@ -79,7 +79,7 @@ public class Puzzle implements Transferable {
         }
     }
 
-    public class UnexpectedEndOfInputException extends Exception {
+    public static class UnexpectedEndOfInputException extends Exception {
 
 		/**
 		 * 
@@ -0,0 +1,422 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ * 
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * compact binary encodings of puzzles, complete grids and boards.
+ * 
+ * puzzle: 4 bits per cell, 0 for unknown - 41 bytes.
+ * grid (a solution): each cell, from left to right, top to bottom, is a digit in a mixed radix number, 
+ * 	where the radix is the number of digits not yet used by the cell's row, column and block. 
+ * 	The number is less than 2^123, so it always fits in 16 bytes.
+ * board: 2 bytes per cell, the value of a known cell, or the candidate bit mask of an unknown cell - 162 bytes.
+ * 
+ * cells are given as byte arrays of 81, row by row, 0 for unknown.
+ * 
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class PuzzleCodec {
+
+    public static final int PUZZLE_BYTES = (Board.TOTAL_CELLS + 1) / 2;
+    public static final int GRID_BYTES = 16;
+    public static final int BOARD_BYTES = Board.TOTAL_CELLS * 2;
+
+    // in the board encoding, a known cell has this bit set
+    static final int KNOWN_BIT = 0x8000;
+
+    private PuzzleCodec() {
+    }
+
+    //////////////////////////////////////////
+    // puzzles
+
+    public static void encodePuzzle(byte[] cells, int offset, ByteBuffer out) {
+        for (int i = 0; i < Board.TOTAL_CELLS; i += 2) {
+            int lo = cells[offset + i];
+            int hi = i + 1 < Board.TOTAL_CELLS ? cells[offset + i + 1] : 0;
+            out.put((byte) (lo | (hi << 4)));
+        }
+    }
+
+    public static void decodePuzzle(ByteBuffer in, byte[] cells, int offset) {
+        for (int i = 0; i < Board.TOTAL_CELLS; i += 2) {
+            int b = in.get();
+            cells[offset + i] = (byte) (b & 0xf);
+            if (i + 1 < Board.TOTAL_CELLS) {
+                cells[offset + i + 1] = (byte) ((b >> 4) & 0xf);
+            }
+        }
+    }
+
+    // bulk encode count puzzles, stored consecutively in cells
+    public static void encodePuzzles(byte[] cells, int count, ByteBuffer out) {
+        for (int k = 0; k < count; k++) {
+            encodePuzzle(cells, k * Board.TOTAL_CELLS, out);
+        }
+    }
+
+    public static void decodePuzzles(ByteBuffer in, byte[] cells, int count) {
+        for (int k = 0; k < count; k++) {
+            decodePuzzle(in, cells, k * Board.TOTAL_CELLS);
+        }
+    }
+
+    //////////////////////////////////////////
+    // complete grids
+
+    /**
+     * @throws IllegalArgumentException if the cells are not a complete, valid grid
+     */
+    public static void encodeGrid(byte[] cells, int offset, ByteBuffer out) {
+        int[] radixes = new int[Board.TOTAL_CELLS];
+        int[] digits = new int[Board.TOTAL_CELLS];
+
+        // used digits bit masks
+        int[] rowUsed = new int[9];
+        int[] colUsed = new int[9];
+        int[] blockUsed = new int[9];
+
+        for (int idx = 0; idx < Board.TOTAL_CELLS; idx++) {
+            int row = idx / 9;
+            int col = idx % 9;
+            int block = row / 3 * 3 + col / 3;
+            int value = cells[offset + idx];
+            int used = rowUsed[row] | colUsed[col] | blockUsed[block];
+            int bit = 1 << (value - 1);
+            if (value < 1 || value > 9 || (used & bit) != 0) {
+                throw new IllegalArgumentException("not a valid complete grid, at cell " + idx);
+            }
+
+            // the digit is the rank of the value among the unused values
+            int free = ~used & 0x1ff;
+            radixes[idx] = Integer.bitCount(free);
+            digits[idx] = Integer.bitCount(free & (bit - 1));
+
+            rowUsed[row] |= bit;
+            colUsed[col] |= bit;
+            blockUsed[block] |= bit;
+        }
+
+        // 128 bit number in 32 bit limbs, least significant first
+        long[] limbs = new long[4];
+        for (int idx = Board.TOTAL_CELLS - 1; idx >= 0; idx--) {
+            long carry = digits[idx];
+            for (int k = 0; k < 4; k++) {
+                long v = limbs[k] * radixes[idx] + carry;
+                limbs[k] = v & 0xffffffffL;
+                carry = v >>> 32;
+            }
+        }
+
+        for (int k = 3; k >= 0; k--) {
+            out.putInt((int) limbs[k]);
+        }
+    }
+
+    public static void decodeGrid(ByteBuffer in, byte[] cells, int offset) {
+        long[] limbs = new long[4];
+        for (int k = 3; k >= 0; k--) {
+            limbs[k] = in.getInt() & 0xffffffffL;
+        }
+
+        int[] rowUsed = new int[9];
+        int[] colUsed = new int[9];
+        int[] blockUsed = new int[9];
+
+        for (int idx = 0; idx < Board.TOTAL_CELLS; idx++) {
+            int row = idx / 9;
+            int col = idx % 9;
+            int block = row / 3 * 3 + col / 3;
+            int free = ~(rowUsed[row] | colUsed[col] | blockUsed[block]) & 0x1ff;
+            int radix = Integer.bitCount(free);
+
+            // divide by the radix, the remainder is the digit
+            long remainder = 0;
+            if (radix > 1) {
+                for (int k = 3; k >= 0; k--) {
+                    long v = (remainder << 32) | limbs[k];
+                    limbs[k] = v / radix;
+                    remainder = v % radix;
+                }
+            }
+
+            // the value of the rank among the unused values
+            int bits = free;
+            for (int r = 0; r < remainder; r++) {
+                bits &= bits - 1;
+            }
+            int bit = Integer.lowestOneBit(bits);
+            if (bit == 0) {
+                throw new IllegalArgumentException("malformed grid code");
+            }
+            cells[offset + idx] = (byte) (Integer.numberOfTrailingZeros(bit) + 1);
+
+            rowUsed[row] |= bit;
+            colUsed[col] |= bit;
+            blockUsed[block] |= bit;
+        }
+    }
+
+    public static void encodeGrids(byte[] cells, int count, ByteBuffer out) {
+        for (int k = 0; k < count; k++) {
+            encodeGrid(cells, k * Board.TOTAL_CELLS, out);
+        }
+    }
+
+    public static void decodeGrids(ByteBuffer in, byte[] cells, int count) {
+        for (int k = 0; k < count; k++) {
+            decodeGrid(in, cells, k * Board.TOTAL_CELLS);
+        }
+    }
+
+    //////////////////////////////////////////
+    // boards, including the candidates
+
+    public static void encodeBoard(Board board, ByteBuffer out) {
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                Cell cell = board.sudokuCells[i][j];
+                if (cell.known) {
+                    out.putShort((short) (KNOWN_BIT | cell.value));
+                } else {
+                    int mask = 0;
+                    for (int candidate : cell.candidates) {
+                        mask |= 1 << (candidate - 1);
+                    }
+                    out.putShort((short) mask);
+                }
+            }
+        }
+    }
+
+    public static Board decodeBoard(ByteBuffer in) {
+        Board board = new Board();
+        int unknowns = Board.TOTAL_CELLS;
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                int code = in.getShort() & 0xffff;
+                Cell cell = board.sudokuCells[i][j];
+                if ((code & KNOWN_BIT) != 0) {
+                    cell.setValue(code & 0xf);
+                    unknowns--;
+                } else {
+                    cell.candidates.clear();
+                    for (int candidate = 1; candidate <= 9; candidate++) {
+                        if ((code & (1 << (candidate - 1))) != 0) {
+                            cell.candidates.add(candidate);
+                        }
+                    }
+                }
+            }
+        }
+        board.unknowns = unknowns;
+        board.recount();
+        return board;
+    }
+
+    //////////////////////////////////////////
+    // conversions
+
+    public static byte[] toCells(Puzzle puzzle) {
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                cells[i * 9 + j] = (byte) puzzle.values[i][j];
+            }
+        }
+        return cells;
+    }
+
+    public static byte[] toCells(Board board) {
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                Cell cell = board.sudokuCells[i][j];
+                cells[i * 9 + j] = (byte) (cell.known ? cell.value : 0);
+            }
+        }
+        return cells;
+    }
+
+    public static Puzzle toPuzzle(byte[] cells, int offset) {
+        Puzzle puzzle = new Puzzle();
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                puzzle.values[i][j] = cells[offset + i * 9 + j];
+            }
+        }
+        return puzzle;
+    }
+
+    public static byte[] encodeGrid(Board board) {
+        ByteBuffer buffer = ByteBuffer.allocate(GRID_BYTES);
+        encodeGrid(toCells(board), 0, buffer);
+        return buffer.array();
+    }
+
+    public static Puzzle decodeGrid(byte[] code) {
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+        decodeGrid(ByteBuffer.wrap(code), cells, 0);
+        return toPuzzle(cells, 0);
+    }
+
+    public static byte[] encodePuzzle(Board board) {
+        ByteBuffer buffer = ByteBuffer.allocate(PUZZLE_BYTES);
+        encodePuzzle(toCells(board), 0, buffer);
+        return buffer.array();
+    }
+
+    public static Puzzle decodePuzzle(byte[] code) {
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+        decodePuzzle(ByteBuffer.wrap(code), cells, 0);
+        return toPuzzle(cells, 0);
+    }
+
+    //////////////////////////////////////////
+    // files
+
+    public static enum Format {
+        PUZZLE(PUZZLE_BYTES), GRID(GRID_BYTES);
+
+        final int recordBytes;
+
+        Format(int recordBytes) {
+            this.recordBytes = recordBytes;
+        }
+
+        public int getRecordBytes() {
+            return recordBytes;
+        }
+    }
+
+    // file header: magic, format
+    static final int MAGIC = 0x6a695355;       // "jiSU"
+    static final int HEADER_BYTES = 8;
+
+    /**
+     * writes a file of encoded puzzles or grids
+     */
+    public static class Writer implements Closeable {
+        final Format format;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(PuzzleReader.BUFFER_SIZE);
+
+        @SuppressWarnings("resource")
+        public Writer(String fileName, Format format) throws IOException {
+            this.format = format;
+            RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            buffer.putInt(MAGIC);
+            buffer.putInt(format.ordinal());
+        }
+
+        public void write(byte[] cells, int offset) throws IOException {
+            if (buffer.remaining() < format.recordBytes) {
+                flush();
+            }
+            if (format == Format.PUZZLE) {
+                encodePuzzle(cells, offset, buffer);
+            } else {
+                encodeGrid(cells, offset, buffer);
+            }
+        }
+
+        public void write(Puzzle puzzle) throws IOException {
+            write(toCells(puzzle), 0);
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * reads a file written by Writer, memory mapped, with random access to the i-th record.
+     * the file must fit in one mapping (2 GB).
+     */
+    public static class Reader implements Closeable {
+        final Format format;
+        private final RandomAccessFile file;
+        private final MappedByteBuffer mapped;
+        private final int count;
+
+        public Reader(String fileName) throws IOException {
+            file = new RandomAccessFile(fileName, "r");
+            FileChannel channel = file.getChannel();
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+                file.close();
+                throw new IOException(fileName + " is not an encoded puzzle file");
+            }
+            format = Format.values()[mapped.getInt(4)];
+            count = (mapped.capacity() - HEADER_BYTES) / format.recordBytes;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        // read the i-th record into cells, thread safe
+        public void read(int idx, byte[] cells, int offset) {
+            if (idx < 0 || idx >= count) {
+                throw new IndexOutOfBoundsException("record " + idx + " out of range 0 - " + (count - 1));
+            }
+            ByteBuffer in = mapped.duplicate();
+            in.position(HEADER_BYTES + idx * format.recordBytes);
+            if (format == Format.PUZZLE) {
+                decodePuzzle(in, cells, offset);
+            } else {
+                decodeGrid(in, cells, offset);
+            }
+        }
+
+        public Puzzle get(int idx) {
+            byte[] cells = new byte[Board.TOTAL_CELLS];
+            read(idx, cells, 0);
+            return toPuzzle(cells, 0);
+        }
+
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ * 
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a memory mapped puzzle corpus file, with random access to the i-th puzzle.
+ * 
+ * A file of 81 character lines (fixed width) is addressed directly, without parsing the file.
+ * Any other file, e.g. the named puzzle format of --batch, is scanned once to build an offset index.
+ * 
+ * Files larger than a mapping are mapped in chunks, a puzzle never spans 2 chunks.
+ * The corpus is read only, and can be read by multiple threads.
+ *  
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class PuzzleCorpus implements Closeable {
+
+    // the largest mapping of a chunk
+    static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    /**
+     * a puzzle read from the corpus
+     */
+    public static class Record {
+        final long index;
+        final String name;      // null if the corpus is not named
+        final byte[] cells;     // 0 for unknown
+
+        Record(long index, String name, byte[] cells) {
+            this.index = index;
+            this.name = name;
+            this.cells = cells;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getCells() {
+            return cells;
+        }
+
+        public Board toBoard() {
+            Board board = new Board();
+            board.setCells(cells, 0);
+            return board;
+        }
+
+        public Puzzle toPuzzle() {
+            Puzzle puzzle = new Puzzle();
+            for (int i = 0; i < 9; i++) {
+                for (int j = 0; j < 9; j++) {
+                    puzzle.values[i][j] = cells[i * 9 + j];
+                }
+            }
+            return puzzle;
+        }
+    }
+
+    final boolean named;
+
+    private final RandomAccessFile file;
+    private final long fileSize;
+    private long puzzleCount;
+
+    // the line length including the line terminator, 0 if the file is indexed
+    private int recordWidth;
+
+    // the start of each puzzle, null if the file is fixed width
+    private long[] offsets;
+
+    // chunk k is mapped from byte chunkStarts[k], and contains puzzles from chunkFirstRecords[k]
+    private long[] chunkStarts;
+    private long[] chunkFirstRecords;
+    private MappedByteBuffer[] chunks;
+
+    //////////////////////////////////////////
+
+    /**
+     * @param named true if each puzzle is preceded by a name, as the --batch format
+     */
+    public PuzzleCorpus(String fileName, boolean named) throws IOException {
+        this.named = named;
+        file = new RandomAccessFile(fileName, "r");
+        fileSize = file.getChannel().size();
+
+        if (named || !detectFixedWidth()) {
+            buildIndex();
+        }
+
+        mapChunks();
+    }
+
+    /**
+     * a fixed width file has 81 cell characters on each line, and nothing else.
+     * the first line determines the width, the rest of the file is not checked.
+     */
+    private boolean detectFixedWidth() throws IOException {
+        ByteBuffer line = ByteBuffer.allocate(Board.TOTAL_CELLS + 2);
+        file.getChannel().read(line, 0);
+        line.flip();
+
+        if (line.remaining() < Board.TOTAL_CELLS) {
+            return false;
+        }
+
+        for (int i = 0; i < Board.TOTAL_CELLS; i++) {
+            int b = line.get(i);
+            if (!(b == '.' || (b >= '0' && b <= '9'))) {
+                return false;
+            }
+        }
+
+        int width;
+        if (line.remaining() == Board.TOTAL_CELLS) {
+            width = Board.TOTAL_CELLS + 1;        // a single line without terminator
+        } else if (line.get(Board.TOTAL_CELLS) == '\n') {
+            width = Board.TOTAL_CELLS + 1;
+        } else if (line.get(Board.TOTAL_CELLS) == '\r' && line.remaining() > Board.TOTAL_CELLS + 1
+                && line.get(Board.TOTAL_CELLS + 1) == '\n') {
+            width = Board.TOTAL_CELLS + 2;
+        } else {
+            return false;
+        }
+
+        // the last line may not have a terminator
+        long count = (fileSize + width - 1) / width;
+        if (fileSize < (count - 1) * width + Board.TOTAL_CELLS) {
+            return false;
+        }
+
+        recordWidth = width;
+        puzzleCount = count;
+        return true;
+    }
+
+    // scan the file once, recording the start of each puzzle
+    private void buildIndex() throws IOException {
+        PuzzleReader reader = new PuzzleReader(file.getChannel().position(0));
+
+        long[] starts = new long[1024];
+        int count = 0;
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+
+        try {
+            while (reader.skipWhitespace()) {
+                long start = reader.getPosition();
+                if (named) {
+                    reader.readName();
+                }
+                if (!reader.read(cells)) {
+                    break;
+                }
+
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = start;
+            }
+        } catch (Puzzle.UnexpectedEndOfInputException e) {
+            // a truncated last puzzle is not included
+        }
+
+        offsets = Arrays.copyOf(starts, count);
+        puzzleCount = count;
+    }
+
+    private long recordStart(long idx) {
+        if (offsets == null) {
+            return idx * recordWidth;
+        }
+        return offsets[(int) idx];
+    }
+
+    private long recordEnd(long idx) {
+        if (offsets == null) {
+            return Math.min(idx * recordWidth + Board.TOTAL_CELLS, fileSize);
+        }
+        return idx + 1 < puzzleCount ? offsets[(int) idx + 1] : fileSize;
+    }
+
+    private void mapChunks() throws IOException {
+        ArrayList<Long> starts = new ArrayList<Long>();
+        ArrayList<Long> firstRecords = new ArrayList<Long>();
+
+        long idx = 0;
+        while (idx < puzzleCount) {
+            long start = recordStart(idx);
+            starts.add(start);
+            firstRecords.add(idx);
+
+            // extend the chunk while the puzzle fits
+            if (offsets == null) {
+                idx += Math.max(1, MAX_CHUNK_BYTES / recordWidth);
+            } else {
+                idx++;
+                while (idx < puzzleCount && recordEnd(idx) - start <= MAX_CHUNK_BYTES) {
+                    idx++;
+                }
+            }
+        }
+
+        int chunkCount = starts.size();
+        chunkStarts = new long[chunkCount];
+        chunkFirstRecords = new long[chunkCount];
+        chunks = new MappedByteBuffer[chunkCount];
+        FileChannel channel = file.getChannel();
+        for (int k = 0; k < chunkCount; k++) {
+            chunkStarts[k] = starts.get(k);
+            chunkFirstRecords[k] = firstRecords.get(k);
+            long end = k + 1 < chunkCount ? recordEnd(firstRecords.get(k + 1) - 1) : fileSize;
+            chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStarts[k], end - chunkStarts[k]);
+        }
+    }
+
+    //////////////////////////////////////////
+
+    public long size() {
+        return puzzleCount;
+    }
+
+    public boolean isFixedWidth() {
+        return offsets == null;
+    }
+
+    /**
+     * the bytes of the i-th puzzle, including its name if named.
+     * the returned buffer is independent, so it can be used by any thread, e.g. with a PuzzleReader.
+     */
+    public ByteBuffer getRecordBuffer(long idx) {
+        if (idx < 0 || idx >= puzzleCount) {
+            throw new IndexOutOfBoundsException("puzzle index " + idx + " out of range 0 - " + (puzzleCount - 1));
+        }
+
+        int k = Arrays.binarySearch(chunkFirstRecords, idx);
+        if (k < 0) {
+            k = -k - 2;
+        }
+
+        ByteBuffer buffer = chunks[k].duplicate();
+        buffer.limit((int) (recordEnd(idx) - chunkStarts[k]));
+        buffer.position((int) (recordStart(idx) - chunkStarts[k]));
+        return buffer.slice();
+    }
+
+    public Record get(long idx) throws IOException {
+        PuzzleReader reader = new PuzzleReader(getRecordBuffer(idx));
+        String name = named ? reader.readName() : null;
+        byte[] cells = new byte[Board.TOTAL_CELLS];
+        try {
+            reader.read(cells);
+        } catch (Puzzle.UnexpectedEndOfInputException e) {
+            throw new IOException("malformed puzzle " + idx + " in corpus");
+        }
+        return new Record(idx, name, cells);
+    }
+
+    /**
+     * a spliterator over the puzzles, trySplit() splits the mapping by byte ranges, at puzzle boundaries.
+     * e.g. StreamSupport.stream(corpus.spliterator(), true) processes the corpus in parallel.
+     */
+    public Spliterator<Record> spliterator() {
+        return new RecordSpliterator(0, puzzleCount);
+    }
+
+    public Spliterator<Record> spliterator(long from, long to) {
+        return new RecordSpliterator(from, to);
+    }
+
+    private class RecordSpliterator implements Spliterator<Record> {
+        // the puzzle range [idx, end)
+        long idx;
+        final long end;
+
+        RecordSpliterator(long idx, long end) {
+            this.idx = idx;
+            this.end = end;
+        }
+
+        public boolean tryAdvance(Consumer<? super Record> action) {
+            if (idx >= end) {
+                return false;
+            }
+            action.accept(read(idx++));
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Record> action) {
+            while (idx < end) {
+                action.accept(read(idx++));
+            }
+        }
+
+        private Record read(long i) {
+            try {
+                return get(i);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+
+        public Spliterator<Record> trySplit() {
+            if (end - idx < 2) {
+                return null;
+            }
+
+            // split at the puzzle closest to the middle byte
+            long midByte = (recordStart(idx) + recordStart(end - 1)) / 2;
+            long mid;
+            if (offsets == null) {
+                mid = midByte / recordWidth;
+            } else {
+                mid = Arrays.binarySearch(offsets, (int) idx, (int) end, midByte);
+                if (mid < 0) {
+                    mid = -mid - 1;
+                }
+            }
+            if (mid <= idx || mid >= end) {
+                mid = idx + (end - idx) / 2;
+            }
+
+            RecordSpliterator prefix = new RecordSpliterator(idx, mid);
+            idx = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return end - idx;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    public void close() throws IOException {
+        // the mappings are released when they are garbage collected
+        file.close();
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ * 
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.Arrays;
+
+/**
+ * a compact, immutable key of a puzzle: 81 cells of 4 bits each (41 bytes).
+ * 
+ * 0 means not set, so a key only covers puzzles, not candidate lists.
+ * It is used as a hash key, e.g. by the SolveCache.
+ * 
+ */
+public final class PuzzleKey {
+
+    public static final int KEY_BYTES = (Board.TOTAL_CELLS + 1) / 2;
+
+    private final byte[] packed;
+    private final int hash;
+
+    //////////////////////////////////////////
+
+    private PuzzleKey(byte[] packed) {
+        this.packed = packed;
+        this.hash = Arrays.hashCode(packed);
+    }
+
+    public static PuzzleKey of(Puzzle puzzle) {
+        byte[] packed = new byte[KEY_BYTES];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                setNibble(packed, i * 9 + j, puzzle.values[i][j]);
+            }
+        }
+        return new PuzzleKey(packed);
+    }
+
+    /**
+     * the board must not have candidate edits, i.e. every unknown cell still has all 9 candidates,
+     * otherwise the key would not represent the board, and null is returned.
+     */
+    public static PuzzleKey of(Board board) {
+        byte[] packed = new byte[KEY_BYTES];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                Cell cell = board.sudokuCells[i][j];
+                if (cell.known) {
+                    setNibble(packed, i * 9 + j, cell.value);
+                } else if (cell.candidates.size() != 9) {
+                    return null;
+                }
+            }
+        }
+        return new PuzzleKey(packed);
+    }
+
+    /**
+     * the key of a puzzle with its digits relabeled in the order of first appearance (left to right, top to bottom),
+     * so that puzzles only differing by a digit permutation share the same key.
+     * 
+     * labelMap (size 10) receives the mapping from the original digit to the canonical digit,
+     * use toPuzzle(labelMap) to map a canonical puzzle (or solution) back.
+     */
+    public static PuzzleKey canonicalOf(Puzzle puzzle, int[] labelMap) {
+        Arrays.fill(labelMap, 0);
+        int nextLabel = 1;
+        byte[] packed = new byte[KEY_BYTES];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                int value = puzzle.values[i][j];
+                if (value == 0) {
+                    continue;
+                }
+                if (labelMap[value] == 0) {
+                    labelMap[value] = nextLabel++;
+                }
+                setNibble(packed, i * 9 + j, labelMap[value]);
+            }
+        }
+
+        // digits that do not appear take the remaining labels, so the map is a permutation
+        for (int value = 1; value <= 9; value++) {
+            if (labelMap[value] == 0) {
+                labelMap[value] = nextLabel++;
+            }
+        }
+        return new PuzzleKey(packed);
+    }
+
+    private static void setNibble(byte[] packed, int idx, int value) {
+        if ((idx & 1) == 0) {
+            packed[idx >> 1] |= value;
+        } else {
+            packed[idx >> 1] |= value << 4;
+        }
+    }
+
+    //////////////////////////////////////////
+
+    // the value of a cell, 0 if not set
+    public int get(int row, int col) {
+        int idx = row * 9 + col;
+        return (packed[idx >> 1] >> ((idx & 1) << 2)) & 0xf;
+    }
+
+    public Puzzle toPuzzle() {
+        Puzzle puzzle = new Puzzle();
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                puzzle.values[i][j] = get(i, j);
+            }
+        }
+        return puzzle;
+    }
+
+    /**
+     * map a canonical key back to the original digits,
+     * labelMap is the one filled by canonicalOf()
+     */
+    public Puzzle toPuzzle(int[] labelMap) {
+        int[] inverse = new int[10];
+        for (int value = 1; value <= 9; value++) {
+            inverse[labelMap[value]] = value;
+        }
+
+        Puzzle puzzle = new Puzzle();
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                puzzle.values[i][j] = inverse[get(i, j)];
+            }
+        }
+        return puzzle;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PuzzleKey)) {
+            return false;
+        }
+        PuzzleKey other = (PuzzleKey) o;
+        return hash == other.hash && Arrays.equals(packed, other.packed);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // the 81 character line format, with . for a cell not set
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(Board.TOTAL_CELLS);
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                int value = get(i, j);
+                sb.append(value == 0 ? '.' : (char) ('0' + value));
+            }
+        }
+        return sb.toString();
+    }
+
+}
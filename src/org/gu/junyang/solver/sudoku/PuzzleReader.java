@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ * 
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a byte level puzzle reader, for high throughput batch input.
+ * 
+ * It accepts the same format as Board.read(Scanner): cells from left to right, top to bottom,
+ * 1-9 for a known cell, . or 0 for an unknown cell, all other characters are ignored.
+ * So both the grid format and the 81 character line format are read.
+ * As with the Scanner, the rest of the token that completes a puzzle is skipped.
+ * 
+ * The input is either a channel (a file, or the console), read through a reused buffer,
+ * or a (memory mapped) byte buffer. 
+ * Cells are read into a byte array, 0 for unknown, so there is no per cell allocation. 
+ *  
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+public class PuzzleReader implements Closeable {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+
+    // null when reading from a byte buffer
+    private ReadableByteChannel channel;
+
+    private ByteBuffer buffer;
+
+    // the input position of the start of the buffer, for getPosition()
+    private long bufferStart;
+
+    // working variables
+    private byte[] nameBytes = new byte[64];
+    private byte[] cells = new byte[Board.TOTAL_CELLS];
+
+    //////////////////////////////////////////
+
+    public PuzzleReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();      // empty, to be filled
+    }
+
+    public PuzzleReader(InputStream inputStream) {
+        this(Channels.newChannel(inputStream));
+    }
+
+    // read from the remaining bytes of the buffer, e.g. a MappedByteBuffer
+    public PuzzleReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * open a file, it is memory mapped if it fits in a buffer, otherwise it is read through the channel.
+     */
+    public static PuzzleReader open(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        FileChannel fileChannel = file.getChannel();
+        long size = fileChannel.size();
+        if (size <= Integer.MAX_VALUE) {
+            ByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // the mapping stays valid after the channel is closed
+            file.close();
+            return new PuzzleReader(mapped);
+        }
+        return new PuzzleReader(fileChannel);
+    }
+
+    //////////////////////////////////////////
+
+    private boolean fill() throws IOException {
+        if (channel == null) {
+            return false;
+        }
+
+        bufferStart += buffer.limit();
+        buffer.clear();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        buffer.flip();
+        return n > 0;
+    }
+
+    // -1 at the end of input
+    private int nextByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    // -1 at the end of input
+    private int peekByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0b
+                || (b >= 0x1c && b <= 0x1f);
+    }
+
+    /**
+     * skip whitespace characters
+     * @return false at the end of input
+     */
+    public boolean skipWhitespace() throws IOException {
+        int b;
+        while ((b = peekByte()) >= 0) {
+            if (!isWhitespace(b)) {
+                return true;
+            }
+            buffer.get();
+        }
+        return false;
+    }
+
+    // the number of bytes consumed from the input, or the buffer position when reading from a byte buffer
+    public long getPosition() {
+        return bufferStart + buffer.position();
+    }
+
+    // skip the rest of the current token
+    private void skipToken() throws IOException {
+        int b;
+        while ((b = peekByte()) >= 0 && !isWhitespace(b)) {
+            buffer.get();
+        }
+    }
+
+    /**
+     * read the next whitespace delimited token, e.g. a puzzle name in the batch format
+     * @return null at the end of input
+     */
+    public String readName() throws IOException {
+        int b;
+        do {
+            b = nextByte();
+            if (b < 0) {
+                return null;
+            }
+        } while (isWhitespace(b));
+
+        int len = 0;
+        while (true) {
+            if (len == nameBytes.length) {
+                byte[] bytes = new byte[len * 2];
+                System.arraycopy(nameBytes, 0, bytes, 0, len);
+                nameBytes = bytes;
+            }
+            nameBytes[len++] = (byte) b;
+
+            b = peekByte();
+            if (b < 0 || isWhitespace(b)) {
+                break;
+            }
+            buffer.get();
+        }
+        return new String(nameBytes, 0, len, NAME_CHARSET);
+    }
+
+    /**
+     * read the 81 cells of a puzzle, 0 for an unknown cell
+     * @param cells an array of at least offset + 81 bytes
+     * @return false if no data read
+     * @throws Puzzle.UnexpectedEndOfInputException if data ends in the middle of a puzzle
+     */
+    public boolean read(byte[] cells, int offset) throws IOException, Puzzle.UnexpectedEndOfInputException {
+        int idx = 0;
+        while (idx < Board.TOTAL_CELLS) {
+            int b = nextByte();
+            if (b < 0) {
+                if (idx != 0) {
+                    throw new Puzzle.UnexpectedEndOfInputException();
+                }
+                return false;
+            }
+
+            if (b >= '1' && b <= '9') {
+                cells[offset + idx++] = (byte) (b - '0');
+            } else if (b == '.' || b == '0') {
+                cells[offset + idx++] = 0;
+            }
+            // ignore all other characters
+        }
+
+        skipToken();
+        return true;
+    }
+
+    public boolean read(byte[] cells) throws IOException, Puzzle.UnexpectedEndOfInputException {
+        return read(cells, 0);
+    }
+
+    // read into a board, as Board.read(Scanner) does
+    public boolean read(Board board) throws IOException, Puzzle.UnexpectedEndOfInputException {
+        if (!read(cells, 0)) {
+            return false;
+        }
+        board.setCells(cells, 0);
+        return true;
+    }
+
+    public boolean read(Puzzle puzzle) throws IOException, Puzzle.UnexpectedEndOfInputException {
+        if (!read(cells, 0)) {
+            return false;
+        }
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                puzzle.values[i][j] = cells[i * 9 + j];
+            }
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+}
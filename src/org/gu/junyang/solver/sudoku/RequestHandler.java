@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * handles the requests of the JSON line protocol, one request at a time.
+ *
+ * a request is an object with an "op" member, an optional "id" member that is echoed in the response,
+ * and the members of the op:
+ * 	solve	puzzle, [level], [all], [random], [transcript], [backbone], [clues]
+ * 	count	puzzle
+ * 	rate	puzzle
+ * 	reduce	puzzle, [seed]
+ * 	generate	[level], [seed]
+ * 	fix		puzzle, [seed]
+ * a puzzle is a string of 81 cells, 1-9 for a value, '.' or '0' for unknown, other characters are ignored.
+ *
+ * a failed request is answered with an "error" member.
+ * the "timeout" member, in milliseconds, is used by the Daemon for the deadline of a request,
+ * and the "maxNodes" and "maxGuesses" members limit the search, see SolveLimits.
+ * when a limit is reached, the response has a "limit" member with the reason, and the partial results.
+ * the solve and count responses have a "stats" member, see SolveStats.
+ * for a puzzle of multiple solutions, "backbone": true adds the cells of the same value in all of them, see Backbone,
+ * and "clues": true adds the fewest values to add for a unique solution, see ClueFixer,
+ * with "cluesExact": false if the search for the fewest was cut short, and they are a minimal set only;
+ * they are solves per cell, under what is left of the limits of the request.
+ *
+ * a handler is thread safe, as the SudokuService is.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.gu.junyang.solver.sudoku.Sudoku.SolveResult;
+import org.gu.junyang.solver.sudoku.SudokuService.PuzzleOutcome;
+import org.gu.junyang.solver.sudoku.SudokuService.SolveOptions;
+import org.gu.junyang.solver.sudoku.SudokuService.SolveOutcome;
+import org.gu.junyang.utilities.ProgramErrorException;
+
+public class RequestHandler {
+
+	Logger logger = Logger.getLogger(this.getClass());
+
+	/**
+	 * a request that can not be handled, the message is returned to the client
+	 */
+	public static class RequestException extends Exception {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 4331094357628463812L;
+
+		public RequestException(String msg) {
+			super(msg);
+		}
+	}
+
+	final SudokuService sudokuService;
+
+	///////////////////////////////////
+
+	public RequestHandler(SudokuService sudokuService) {
+		this.sudokuService = sudokuService;
+	}
+
+	/**
+	 * a failed request is answered with an error response, instead of an exception
+	 * @param deadline	System.currentTimeMillis() of the deadline, 0 for none
+	 */
+	public Map<String, Object> handleRequest(Map<String, Object> request, long deadline) {
+		Object id = request.get("id");
+		try {
+			long timeout = 0;
+			if (deadline != 0)
+				timeout = Math.max(1, deadline - System.currentTimeMillis());
+			SolveLimits solveLimits = new SolveLimits(timeout, getLong(request, "maxNodes", 0), getLong(request, "maxGuesses", 0));
+
+			return handle(request, solveLimits);
+		} catch (RequestException e) {
+			return error(id, e.getMessage());
+		} catch (ProgramErrorException e) {
+			logger.error("request failed", e);
+			return error(id, "program error: " + e.getMessage());
+		} catch (RuntimeException e) {
+			logger.error("request failed", e);
+			return error(id, "program error: " + e);
+		}
+	}
+
+	public Map<String, Object> handle(Map<String, Object> request, SolveLimits solveLimits) throws RequestException, ProgramErrorException {
+		Object op = request.get("op");
+		if (op == null)
+			throw new RequestException("missing op");
+
+		Map<String, Object> response = new LinkedHashMap<String, Object>();
+		response.put("id", request.get("id"));
+
+		if (op.equals("solve")) {
+			solve(request, solveLimits, response);
+		} else if (op.equals("count")) {
+			count(request, solveLimits, response);
+		} else if (op.equals("rate")) {
+			rate(request, solveLimits, response);
+		} else if (op.equals("reduce")) {
+			reduce(request, solveLimits, response);
+		} else if (op.equals("generate")) {
+			generate(request, solveLimits, response);
+		} else if (op.equals("fix")) {
+			fix(request, solveLimits, response);
+		} else
+			throw new RequestException("unknown op: " + op);
+
+		return response;
+	}
+
+	static Map<String, Object> error(Object id, String message) {
+		Map<String, Object> response = new LinkedHashMap<String, Object>();
+		response.put("id", id);
+		response.put("error", message);
+		return response;
+	}
+
+	///////////////////////////////////
+
+	private void solve(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException {
+		Puzzle puzzle = getPuzzle(request);
+
+		boolean transcript = getBoolean(request, "transcript", false);
+		boolean backbone = getBoolean(request, "backbone", false);
+		boolean clues = getBoolean(request, "clues", false);
+		SolveOutcome outcome = sudokuService.solve(puzzle, new SolveOptions(
+				getInt(request, "level", Solver.HIGHEST_CAPABILITY_LEVELS), getBoolean(request, "all", false), 
+				getBoolean(request, "random", false), transcript, solveLimits));
+
+		response.put("result", outcome.getSolveResult().toString());
+		putLimitReason(response, outcome.getLimitReason());
+		putStats(response, outcome.getStats());
+
+		if (outcome.getSolveResult() == SolveResult.UNSOLVABLE) {
+			response.put("message", outcome.getMessage());
+			return;
+		} else if (outcome.getSolveResult() == SolveResult.UNSOLVED) {
+			response.put("level", outcome.getLevel());
+			response.put("unknowns", outcome.getUnknowns());
+			return;
+		} else if (outcome.getSolveResult() == SolveResult.LIMIT_REACHED) {
+			// the solutions found so far
+			response.put("unknowns", outcome.getUnknowns());
+			response.put("solutions", outcome.getSolutionKeys());
+			return;
+		}
+
+		response.put("level", outcome.getLevel());
+		response.put("solution", toString(outcome.getSolution(0)));
+
+		if (outcome.getSolveResult() == SolveResult.SOLVED_MULTIPLE_SOLUTIONS) {
+			response.put("guess", toString(outcome.getGuessPuzzle(0)));
+			if (backbone)
+				putBackbone(response, puzzle, outcome.getBudget());
+			if (clues)
+				putClues(response, puzzle, outcome.getBudget());
+		}
+
+		if (getBoolean(request, "all", false)) {
+			response.put("solutions", outcome.getSolutionKeys());
+			response.put("limitExceeded", outcome.isFindAllSolutionsLimitExceeded());
+		}
+
+		if (transcript)
+			response.put("transcript", outcome.getTranscript());
+	}
+
+	private void count(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException {
+		SolveOutcome outcome = sudokuService.count(getPuzzle(request), solveLimits);
+
+		response.put("result", outcome.getSolveResult().toString());
+		putLimitReason(response, outcome.getLimitReason());
+		response.put("count", outcome.getSolutionCount());
+		response.put("limitExceeded", outcome.isFindAllSolutionsLimitExceeded());
+		putStats(response, outcome.getStats());
+	}
+
+	private void rate(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException, ProgramErrorException {
+		SolveOutcome outcome = sudokuService.rate(getPuzzle(request), solveLimits);
+
+		response.put("result", outcome.getSolveResult().toString());
+		putLimitReason(response, outcome.getLimitReason());
+		if (outcome.isSolved())
+			response.put("level", outcome.getLevel());
+	}
+
+	private void reduce(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException, ProgramErrorException {
+		PuzzleOutcome outcome = sudokuService.reduce(getPuzzle(request), getSeed(request), solveLimits);
+		if (outcome == null)
+			throw new RequestException("the puzzle is unsolvable or has multiple solutions, can not be reduced");
+
+		// the best reduction so far if a limit is reached
+		putLimitReason(response, outcome.getLimitReason());
+		response.put("puzzle", outcome.getPuzzleKey());
+		response.put("reductions", outcome.getReductionCount());
+	}
+
+	private void generate(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException, ProgramErrorException {
+		Integer targetCapability = null;
+		if (request.get("level") != null) {
+			targetCapability = getInt(request, "level", 0);
+			if (targetCapability < 1 || targetCapability > Solver.HIGHEST_CAPABILITY_LEVELS)
+				throw new RequestException("target capability of " + targetCapability + " out of range");
+		}
+
+		PuzzleOutcome outcome = sudokuService.generate(targetCapability, getSeed(request), solveLimits);
+
+		// the last puzzle generated if a limit is reached
+		putLimitReason(response, outcome.getLimitReason());
+		response.put("puzzle", outcome.getPuzzleKey());
+		response.put("level", outcome.getLevel());
+	}
+
+	private void fix(Map<String, Object> request, SolveLimits solveLimits, Map<String, Object> response) throws RequestException, ProgramErrorException {
+		PuzzleOutcome outcome = sudokuService.fix(getPuzzle(request), getSeed(request), solveLimits);
+
+		putLimitReason(response, outcome.getLimitReason());
+		response.put("puzzle", outcome.getPuzzleKey());
+	}
+
+	/**
+	 * no backbone if a limit is reached
+	 */
+	static void putBackbone(Map<String, Object> response, Puzzle puzzle, SolveBudget budget) {
+		try {
+			response.put("backbone", toString(Backbone.of(puzzle, budget).getPuzzle()));
+		} catch (SolveLimitException e) {
+			putLimitReason(response, e.getReason());
+		}
+	}
+
+	/**
+	 * no clues if a limit is reached
+	 */
+	static void putClues(Map<String, Object> response, Puzzle puzzle, SolveBudget budget) {
+		try {
+			ClueFixer clueFixer = ClueFixer.of(puzzle, budget);
+			response.put("clues", toString(clueFixer.getClues()));
+			response.put("cluesExact", clueFixer.isExact());
+		} catch (SolveLimitException e) {
+			putLimitReason(response, e.getReason());
+		}
+	}
+
+	///////////////////////////////////
+
+	static void putLimitReason(Map<String, Object> response, SolveLimits.Reason limitReason) {
+		if (limitReason != null)
+			response.put("limit", limitReason.toString());
+	}
+
+	static void putStats(Map<String, Object> response, SolveStats stats) {
+		if (stats != null)
+			response.put("stats", stats.toMap());
+	}
+
+	static Long getSeed(Map<String, Object> request) throws RequestException {
+		Object seed = request.get("seed");
+		if (seed != null && ! (seed instanceof Long))
+			throw new RequestException("seed is not an integer");
+		return (Long) seed;
+	}
+
+	static Puzzle getPuzzle(Map<String, Object> request) throws RequestException {
+		Object value = request.get("puzzle");
+		if ( ! (value instanceof String) )
+			throw new RequestException("missing puzzle");
+
+		Puzzle puzzle = new Puzzle();
+		try {
+			if ( ! new PuzzleReader(ByteBuffer.wrap(((String) value).getBytes())).read(puzzle) )
+				throw new RequestException("empty puzzle");
+		} catch (Puzzle.UnexpectedEndOfInputException e) {
+			throw new RequestException("incomplete puzzle");
+		} catch (IOException e) {
+			// not from a buffer
+			throw new RequestException(e.getMessage());
+		}
+		return puzzle;
+	}
+
+	static String toString(Puzzle puzzle) {
+		return PuzzleKey.of(puzzle).toString();
+	}
+
+	static boolean getBoolean(Map<String, Object> request, String name, boolean defaultValue) throws RequestException {
+		Object value = request.get(name);
+		if (value == null)
+			return defaultValue;
+		if ( ! (value instanceof Boolean) )
+			throw new RequestException(name + " is not a boolean");
+		return (Boolean) value;
+	}
+
+	static long getLong(Map<String, Object> request, String name, long defaultValue) throws RequestException {
+		Object value = request.get(name);
+		if (value == null)
+			return defaultValue;
+		if ( ! (value instanceof Long) )
+			throw new RequestException(name + " is not an integer");
+		return (Long) value;
+	}
+
+	static int getInt(Map<String, Object> request, String name, int defaultValue) throws RequestException {
+		Object value = request.get(name);
+		if (value == null)
+			return defaultValue;
+		if ( ! (value instanceof Long) )
+			throw new RequestException(name + " is not an integer");
+		return ((Long) value).intValue();
+	}
+
+}
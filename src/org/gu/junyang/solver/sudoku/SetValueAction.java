@@ -37,4 +37,13 @@ public class SetValueAction extends CellPosition {
 		this.value = value;
 	}
 	
+	public int getValue() {
+		return value;
+	}
+	
+	@Override
+	public String toString() {
+		return "[" + (row + 1) + "][" + (col + 1) + "]=" + value;
+	}
+	
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * what is left of the SolveLimits of an operation in progress.
+ * 
+ * the solvers count their nodes and guesses here, and a SolveLimitException is thrown
+ * when a limit is reached, or the operation is cancelled.
+ * 
+ * the counting is done by the thread of the operation, cancel() can be called by any thread.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import org.gu.junyang.solver.sudoku.SolveLimits.Reason;
+
+public class SolveBudget {
+
+	final SolveLimits limits;
+
+	// System.nanoTime() of the deadline, only valid if the limits have a timeout
+	final long deadline;
+
+	long nodes;
+	long guesses;
+
+	volatile boolean cancelled = false;
+
+	SolveBudget(SolveLimits limits) {
+		this.limits = limits;
+		deadline = System.nanoTime() + limits.timeoutMillis * 1000000L;
+	}
+
+	public void countNode() {
+		nodes++;
+		if (limits.maxNodes != 0 && nodes > limits.maxNodes)
+			throw new SolveLimitException(Reason.MAX_NODES);
+		check();
+	}
+
+	public void countGuess() {
+		guesses++;
+		if (limits.maxGuesses != 0 && guesses > limits.maxGuesses)
+			throw new SolveLimitException(Reason.MAX_GUESSES);
+		countNode();
+	}
+
+	/**
+	 * check the deadline and the cancellation
+	 */
+	public void check() {
+		if (cancelled || Thread.currentThread().isInterrupted())
+			throw new SolveLimitException(Reason.CANCELLED);
+		if (limits.timeoutMillis != 0 && System.nanoTime() - deadline > 0)
+			throw new SolveLimitException(Reason.DEADLINE);
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getGuesses() {
+		return guesses;
+	}
+
+}
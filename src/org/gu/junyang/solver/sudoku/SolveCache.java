@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ * 
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a bounded, thread-safe cache of solve results, keyed by PuzzleKey.
+ * 
+ * the least recently used entry is evicted when the cache is full.
+ * when canonicalKeys is set, puzzles that only differ by a digit permutation share an entry.
+ * 
+ * the cache does not solve, the caller does on a miss, with its own solver and limits, and puts the result;
+ * so 2 threads missing the same puzzle may both solve it, the result is the same.
+ * 
+ * Sudoku uses it in isSolvable(), which is the rating, and in reduce. Sudoku.solve() does not,
+ * its result has what an entry does not keep: the solutions, the transcript, the stats, the message
+ * of an unsolvable puzzle, and the result of a capability level lower than the highest.
+ *  
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gu.junyang.solver.sudoku.Sudoku.SolveResult;
+
+public class SolveCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * an immutable cache entry
+     */
+    public static class Entry {
+        final SolveResult solveResult;
+        final int level;
+
+        Entry(SolveResult solveResult, int level) {
+            this.solveResult = solveResult;
+            this.level = level;
+        }
+
+        public SolveResult getSolveResult() {
+            return solveResult;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+
+    final int maxEntries;
+    final boolean canonicalKeys;
+
+    // access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<PuzzleKey, Entry> map;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    //////////////////////////////////////////////
+
+    public SolveCache() {
+        this(DEFAULT_MAX_ENTRIES, false);
+    }
+
+    @SuppressWarnings("serial")
+    public SolveCache(int maxEntries, boolean canonicalKeys) {
+        this.maxEntries = maxEntries;
+        this.canonicalKeys = canonicalKeys;
+        map = new LinkedHashMap<PuzzleKey, SolveCache.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PuzzleKey, SolveCache.Entry> eldest) {
+                if (size() > SolveCache.this.maxEntries) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //////////////////////////////////////////////
+
+    // null if not cached, the caller solves it then
+    public Entry peek(Puzzle puzzle) {
+        Entry entry;
+        synchronized (map) {
+            entry = map.get(keyOf(puzzle));
+        }
+        if (entry != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * record a result solved by the caller, after a miss
+     */
+    public void put(Puzzle puzzle, SolveResult solveResult, int level) {
+        PuzzleKey key = keyOf(puzzle);
+        synchronized (map) {
+            if (!map.containsKey(key)) {
+                map.put(key, new Entry(solveResult, level));
+            }
+        }
+    }
+
+    private PuzzleKey keyOf(Puzzle puzzle) {
+        if (canonicalKeys) {
+            return PuzzleKey.canonicalOf(puzzle, new int[10]);
+        } else {
+            return PuzzleKey.of(puzzle);
+        }
+    }
+
+    //////////////////////////////////////////////
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "solve cache - entries: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount()
+                + ", evictions: " + getEvictionCount();
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * thrown by a solver when a limit of the SolveBudget is reached.
+ * 
+ * it is unchecked, so it passes through the solver methods, 
+ * and unlike BoardException, it is not a dead end of the trial and error; 
+ * Sudoku catches it and returns the partial results.
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import org.gu.junyang.solver.sudoku.SolveLimits.Reason;
+
+public class SolveLimitException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	final Reason reason;
+
+	public SolveLimitException(Reason reason) {
+		super("limit reached: " + reason);
+		this.reason = reason;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+}
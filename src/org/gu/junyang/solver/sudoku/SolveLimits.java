@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * immutable limits of a Sudoku operation, e.g. a solve, a reduce or a generate.
+ * 
+ * a node is a pass of the techniques, or a trial of a value by trial and error;
+ * a guess is a trial of a value.
+ * the nodes and the guesses of all the solves of an operation are counted together.
+ * 
+ * 0 means no limit.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+public class SolveLimits {
+
+	public static final SolveLimits NONE = new SolveLimits(0, 0, 0);
+
+	/**
+	 * why an operation stopped short
+	 */
+	public static enum Reason {
+		DEADLINE,
+		MAX_NODES,
+		MAX_GUESSES,
+		CANCELLED		// by Sudoku.cancel(), or the thread is interrupted
+	}
+
+	final long timeoutMillis;
+	final long maxNodes;
+	final long maxGuesses;
+
+	public SolveLimits(long timeoutMillis, long maxNodes, long maxGuesses) {
+		this.timeoutMillis = timeoutMillis;
+		this.maxNodes = maxNodes;
+		this.maxGuesses = maxGuesses;
+	}
+
+	/**
+	 * start the clock
+	 */
+	public SolveBudget newBudget() {
+		return new SolveBudget(this);
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	public long getMaxGuesses() {
+		return maxGuesses;
+	}
+
+	@Override
+	public String toString() {
+		return "timeout: " + timeoutMillis + " ms, max nodes: " + maxNodes + ", max guesses: " + maxGuesses;
+	}
+
+}
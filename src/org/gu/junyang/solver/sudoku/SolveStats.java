@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the statistics of a solve, collected by the Solver as it goes.
+ *
+ * per technique: the number of passes, the passes that made progress, the time spent,
+ * and the candidates eliminated (including the cross eliminations they trigger).
+ * for the search: the nodes (trials of a value), the backtracks, the maximum depth,
+ * and the bytes and the time of the board snapshots taken to back out.
+ *
+ * the counting is a few additions and a System.nanoTime() per technique pass, so it is always on.
+ * not thread-safe, it belongs to the solve.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SolveStats {
+
+	public static enum Technique {
+		CROSS_ELIMINATION("crossElimination", 1),
+		SINGLE_DESTINATION("singleDestination", 2),
+		LIMITED_CANDIDATES_2("limitedCandidates2", 3),
+		LIMITED_CANDIDATES_3("limitedCandidates3", 3),
+		LIMITED_DESTINATION("limitedDestination", 4),
+		DUAL_ROW_LIMITED_DESTINATION("dualRowLimitedDestination", 5),
+		DUAL_COL_LIMITED_DESTINATION("dualColLimitedDestination", 5),
+		XWING_ROW("xwingRow", 6),
+		XWING_COL("xwingCol", 6),
+		TRIAL_AND_ERROR("trialAndError", 7);
+
+		final String name;
+		final int level;
+
+		Technique(String name, int level) {
+			this.name = name;
+			this.level = level;
+		}
+
+		/**
+		 * the capability level of the technique, 1 to Solver.HIGHEST_CAPABILITY_LEVELS
+		 */
+		public int getLevel() {
+			return level;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	static final int TECHNIQUES = Technique.values().length;
+
+	final long [] passes = new long[TECHNIQUES];
+	final long [] progresses = new long[TECHNIQUES];
+	final long [] nanos = new long[TECHNIQUES];
+	final long [] eliminations = new long[TECHNIQUES];
+
+	long candidatesEliminated;
+
+	// the candidatesEliminated at the end of the last pass counted
+	long eliminatedMark;
+
+	long searchNodes;
+	long backtracks;
+	int maxDepth;
+	long snapshots;
+	long snapshotBytes;
+	// taking and restoring the snapshots
+	long snapshotNanos;
+
+	long solveNanos;
+
+	///////////////////////////////////
+
+	/**
+	 * count a pass of a technique, which started at System.nanoTime() start.
+	 * the eliminations since the last pass counted are attributed to it.
+	 * @return the time now, so the next pass can start from it
+	 */
+	long countPass(Technique technique, boolean progress, long start) {
+		long now = System.nanoTime();
+		int t = technique.ordinal();
+		passes[t]++;
+		if (progress)
+			progresses[t]++;
+		nanos[t] += now - start;
+		eliminations[t] += candidatesEliminated - eliminatedMark;
+		eliminatedMark = candidatesEliminated;
+		return now;
+	}
+
+	void countSearchNode(int depth) {
+		searchNodes++;
+		if (depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	// the board is restored from a snapshot, starting at System.nanoTime() start
+	void countBacktrack(long start) {
+		backtracks++;
+		snapshotNanos += System.nanoTime() - start;
+	}
+
+	void countSnapshot(int bytes, long start) {
+		snapshots++;
+		snapshotBytes += bytes;
+		snapshotNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * add the stats of another solve, e.g. to total the solves of a reduce or a batch
+	 */
+	public void add(SolveStats o) {
+		for (int t=0; t<TECHNIQUES; t++) {
+			passes[t] += o.passes[t];
+			progresses[t] += o.progresses[t];
+			nanos[t] += o.nanos[t];
+			eliminations[t] += o.eliminations[t];
+		}
+		candidatesEliminated += o.candidatesEliminated;
+		searchNodes += o.searchNodes;
+		backtracks += o.backtracks;
+		maxDepth = Math.max(maxDepth, o.maxDepth);
+		snapshots += o.snapshots;
+		snapshotBytes += o.snapshotBytes;
+		snapshotNanos += o.snapshotNanos;
+		solveNanos += o.solveNanos;
+	}
+
+	///////////////////////////////////
+
+	public long getPasses(Technique technique) {
+		return passes[technique.ordinal()];
+	}
+
+	public long getProgresses(Technique technique) {
+		return progresses[technique.ordinal()];
+	}
+
+	public long getNanos(Technique technique) {
+		return nanos[technique.ordinal()];
+	}
+
+	public long getEliminations(Technique technique) {
+		return eliminations[technique.ordinal()];
+	}
+
+	public long getCandidatesEliminated() {
+		return candidatesEliminated;
+	}
+
+	public long getSearchNodes() {
+		return searchNodes;
+	}
+
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getSnapshots() {
+		return snapshots;
+	}
+
+	public long getSnapshotBytes() {
+		return snapshotBytes;
+	}
+
+	public long getSnapshotNanos() {
+		return snapshotNanos;
+	}
+
+	public long getSolveNanos() {
+		return solveNanos;
+	}
+
+	/**
+	 * as a JSON object, see the daemon. techniques not tried are left out.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("solveNanos", solveNanos);
+		map.put("candidatesEliminated", candidatesEliminated);
+		map.put("searchNodes", searchNodes);
+		map.put("backtracks", backtracks);
+		map.put("maxDepth", maxDepth);
+		map.put("snapshots", snapshots);
+		map.put("snapshotBytes", snapshotBytes);
+		map.put("snapshotNanos", snapshotNanos);
+
+		Map<String, Object> techniques = new LinkedHashMap<String, Object>();
+		for (Technique technique : Technique.values()) {
+			int t = technique.ordinal();
+			if (passes[t] == 0)
+				continue;
+			Map<String, Object> techniqueMap = new LinkedHashMap<String, Object>();
+			techniqueMap.put("passes", passes[t]);
+			techniqueMap.put("progresses", progresses[t]);
+			techniqueMap.put("nanos", nanos[t]);
+			techniqueMap.put("eliminations", eliminations[t]);
+			techniques.put(technique.toString(), techniqueMap);
+		}
+		map.put("techniques", techniques);
+		return map;
+	}
+
+	/**
+	 * multiple lines, for the command line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("solve time: ").append(solveNanos / 1000).append(" us");
+		sb.append(", candidates eliminated: ").append(candidatesEliminated);
+		sb.append(", search nodes: ").append(searchNodes);
+		sb.append(", backtracks: ").append(backtracks);
+		sb.append(", max depth: ").append(maxDepth);
+		sb.append(", snapshot bytes: ").append(snapshotBytes);
+		sb.append(", snapshot time: ").append(snapshotNanos / 1000).append(" us");
+		sb.append('\n');
+		for (Technique technique : Technique.values()) {
+			int t = technique.ordinal();
+			if (passes[t] == 0)
+				continue;
+			sb.append('\t').append(technique).append(": passes: ").append(passes[t]);
+			sb.append(", progresses: ").append(progresses[t]);
+			sb.append(", eliminations: ").append(eliminations[t]);
+			sb.append(", time: ").append(nanos[t] / 1000).append(" us\n");
+		}
+		return sb.toString();
+	}
+
+}
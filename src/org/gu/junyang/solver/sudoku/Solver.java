@@ -27,10 +27,12 @@ package org.gu.junyang.solver.sudoku;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
 
+import org.gu.junyang.solver.sudoku.SolveStats.Technique;
 import org.gu.junyang.utilities.ArrayListUtils;
 
 public class Solver extends Board {
@@ -79,36 +81,37 @@ public class Solver extends Board {
     // so use a flag here to improve performance
     boolean debug = false;
 
-    // a list of solutions
-    ArrayList<String> solutions = new ArrayList<String>();
+    // a list of solutions, encoded as complete grids by PuzzleCodec, to save memory
+    ArrayList<byte[]> solutions = new ArrayList<byte[]>();
 
-    // if guessed, corresponding to each solution, the list of guess boards 
-    ArrayList<String> guessBoards = new ArrayList<String>();
+    // corresponding to each solution, the list of guess boards, encoded as puzzles by PuzzleCodec,
+    // null if not guessed 
+    ArrayList<byte[]> guessBoards = new ArrayList<byte[]>();
+
+    // the formatted solutions and guess boards, only made when asked for
+    ArrayList<String> solutionStrings;
+    ArrayList<String> guessBoardStrings;
 
     /**
      * data structures for a transcript
      */
-    ArrayList<String> transcript = new ArrayList<String>();
+    Transcript transcript = new Transcript();
     protected boolean recordRemoveCandidate=true;		// if recordTranscript is false, this one is ignored
 
     public enum Action {
 
         REMOVE_CANDIDATE, SET_VALUE
     };
-    ArrayList<Action> actions = new ArrayList<Action>();    // this is part of the transcript
     boolean recordTranscript = false;
     
     // the list of indexes of solutions
     ArrayList<Integer> solutionTranscriptIndexes = new ArrayList<Integer>();
     
-    // a temporary transcript, prepared for adding to the transcript, but may be reverted
-    ArrayList<String> transcriptTemp = new ArrayList<String>();
-    
     /**
      * board history data structures
      */
     // history to show board changes
-    ArrayList<Board> boardHistory = new ArrayList<Board>();
+    BoardHistory boardHistory = new BoardHistory();
     boolean recordBoardHistory = false;		// since this can be a performance drag, only record when required.
 
     // indexes of the corresponding transcript entries
@@ -126,6 +129,14 @@ public class Solver extends Board {
     boolean [] capabilitiesUsed;
     int highestCapabilityUsed;
     
+    // if set, the nodes and guesses are counted against it, and a SolveLimitException may be thrown
+    SolveBudget budget = null;
+    
+    SolveStats stats = new SolveStats();
+    
+    // of the puzzle being solved, for the flight recorder events, only set while recording
+    long puzzleHash = 0;
+    
     ////////////////////////////////////////////////
 
     public Solver() {
@@ -151,21 +162,35 @@ public class Solver extends Board {
      * false: not solved (with limited capability level
      * BoardException is thrown, the puzzle is not solvable;
      * 
-     * IMPORTANT: do not reuse a solver class
+     * IMPORTANT: do not reuse a solver, unless reset() first
      *
      * @return
      * @throws BoardException
      */
     public boolean Solve() throws BoardException {
+        long start = System.nanoTime();
+        if (SolverEvents.isRecording())
+            puzzleHash = SolverEvents.puzzleHash(this);
+        try {
+            Solve0();
+        } finally {
+            stats.solveNanos += System.nanoTime() - start;
+        }
+        return (solved);
+    }
+
+    protected void Solve0() throws BoardException {
         if (cellPositionList==null)
         	makeCellList();	
 
         addToBoardHistory();
 
-        if (CrossEliminateAll())
+        if (applyTechnique(Technique.CROSS_ELIMINATION))
         	capabilitiesUsed[0] = true;
 
-        sanityCheck(true);
+        // the board may have been set by its cells, from here on it is kept up incrementally
+        recount();
+        checkContradiction(true);
 
         Solve1();
 
@@ -186,22 +211,46 @@ public class Solver extends Board {
         		}
         	}
         }
-        
-        return (solved);
+    }
+
+    /**
+     * a pass of a technique, counted in the stats
+     */
+    protected boolean applyTechnique(Technique technique) {
+        Object event = SolverEvents.beginPass();
+        long eliminated = stats.candidatesEliminated;
+        long start = System.nanoTime();
+        boolean progress;
+        switch (technique) {
+        case CROSS_ELIMINATION: progress = CrossEliminateAll(); break;
+        case SINGLE_DESTINATION: progress = singleDestinationAll(); break;
+        case LIMITED_CANDIDATES_2: progress = limitedCandidates2Search(); break;
+        case LIMITED_CANDIDATES_3: progress = limitedCandidates3Search(); break;
+        case LIMITED_DESTINATION: progress = limitedDestination(); break;
+        case DUAL_ROW_LIMITED_DESTINATION: progress = dualRowLimitedDestination(); break;
+        case DUAL_COL_LIMITED_DESTINATION: progress = dualColLimitedDestination(); break;
+        case XWING_ROW: progress = xwingRow(); break;
+        case XWING_COL: progress = xwingCol(); break;
+        default:
+        	throw new IllegalArgumentException("not a pass: " + technique);
+        }
+        stats.countPass(technique, progress, start);
+        if (event != null)
+            SolverEvents.endPass(event, technique, puzzleHash, progress, stats.candidatesEliminated - eliminated);
+        return progress;
     }
 
     protected void addToBoardHistory() {
     	if (recordBoardHistory) {
-    		boardHistory.add(new Board(this));
+    		boardHistory.add(this);
     		patternCellLists.add( patternCellList );
     	}
 		patternCellList = new CellList();
 
 		if (recordTranscript) {
-    		transcript.addAll(transcriptTemp);
+    		transcript.commit();
     		boardHistoryTranscriptIdxs.add(transcript.size()-1);
 		}
-    	transcriptTemp = new ArrayList<String>();
 			
     }
 
@@ -211,27 +260,30 @@ public class Solver extends Board {
         // so it doesn't appear here
         
         while (unknowns != 0) {
-            if (singleDestinationAll()) {
+            if (budget != null)
+                budget.countNode();
+
+            if (applyTechnique(Technique.SINGLE_DESTINATION)) {
             	capabilitiesUsed[1] = true;
             	continue;
             }
 
-            if ( limitedCandidates2Search() || limitedCandidates3Search() ) {
+            if ( applyTechnique(Technique.LIMITED_CANDIDATES_2) || applyTechnique(Technique.LIMITED_CANDIDATES_3) ) {
             	capabilitiesUsed[2] = true;
             	continue;
             }
 
-            if ( limitedDestination() ) {
+            if ( applyTechnique(Technique.LIMITED_DESTINATION) ) {
             	capabilitiesUsed[3] = true;
             	continue;
             }
 
-            if ( dualRowLimitedDestination() || dualColLimitedDestination() ) {
+            if ( applyTechnique(Technique.DUAL_ROW_LIMITED_DESTINATION) || applyTechnique(Technique.DUAL_COL_LIMITED_DESTINATION) ) {
             	capabilitiesUsed[4] = true;
             	continue;
             }
             
-            if (xwingRow() || xwingCol()) {
+            if (applyTechnique(Technique.XWING_ROW) || applyTechnique(Technique.XWING_COL)) {
             	capabilitiesUsed[5] = true;
             	continue;
             }
@@ -241,7 +293,7 @@ public class Solver extends Board {
         }
 
         if (unknowns == 0) {
-            sanityCheck();
+            checkContradiction(false);
 
             solved = true;
 
@@ -253,24 +305,7 @@ public class Solver extends Board {
             // print guessStack
 //				printGuessStack();
 
-            if (guessed) {
-//					System.out.println("guessed values:");
-                guessBoards.add(guessBoard.toSimpleString());
-            } else {
-                guessBoards.add("");
-            }
-
-            if (solutions.size() == FIND_ALL_SOLUTIONS_LIMIT) {
-                findAllSolutionsLimitExceeded = true;
-            } else {
-                solutions.add(toString());
-                if (recordBoardHistory) {
-                    solutionBoardIndexes.add(boardHistory.size() - 1);
-                }
-                if (recordTranscript) {
-                    solutionTranscriptIndexes.add(transcript.size() - 1);
-                }
-            }
+            addSolution();
         } else {
         	guessed = true;
         	SolveRecursive();
@@ -281,6 +316,28 @@ public class Solver extends Board {
         }
     }
 
+    // record the solved board as a solution
+    protected void addSolution() {
+        if (guessed) {
+//			System.out.println("guessed values:");
+            guessBoards.add(PuzzleCodec.encodePuzzle(guessBoard));
+        } else {
+            guessBoards.add(null);
+        }
+
+        if (solutions.size() == FIND_ALL_SOLUTIONS_LIMIT) {
+            findAllSolutionsLimitExceeded = true;
+        } else {
+            solutions.add(PuzzleCodec.encodeGrid(this));
+            if (recordBoardHistory) {
+                solutionBoardIndexes.add(boardHistory.size() - 1);
+            }
+            if (recordTranscript) {
+                solutionTranscriptIndexes.add(transcript.size() - 1);
+            }
+        }
+    }
+
     public void printGuessStack() {
         for (SetValueAction action : guessStack) {
             System.out.println("[" + (action.row + 1) + "]" + "[" + (action.col + 1) + "]=" + action.value);
@@ -294,7 +351,7 @@ public class Solver extends Board {
             return false;
         }
 
-        return RemoveCandidateWithCheck(row, col, iVal, "EliminateCandidate (1)");	// do not print this one
+        return RemoveCandidateWithCheck(row, col, iVal, Transcript.ELIMINATE_CANDIDATE);	// do not print this one
     }
 
     protected boolean EliminateRow(int iRow, int iVal) {
@@ -409,8 +466,7 @@ public class Solver extends Board {
                 bSet = true;
                 
                 if (recordTranscript) {
-                	transcriptTemp.add("SingleDestination (2): " + toPositionString(iRow, iCol) + "=" + (value + 1));
-                	actions.add(Action.SET_VALUE);
+                	transcript.add(Transcript.SET_VALUE, Transcript.SINGLE_DESTINATION, iRow, iCol, value + 1);
                 }
 
                 patternCellList.addAll(validCellSets[cellSetIdx]);
@@ -456,8 +512,7 @@ public class Solver extends Board {
             int iTmp = sudokuCells[row][col].value;
 
             if (recordTranscript) {
-            	transcriptTemp.add("EliminateCandidates (1): " + toPositionString(row, col) + "=" + iTmp);
-            	actions.add(Action.SET_VALUE);
+            	transcript.add(Transcript.SET_VALUE, Transcript.ELIMINATE_CANDIDATES, row, col, iTmp);
             }
 //            addToBoardHistory();
 
@@ -507,16 +562,14 @@ public class Solver extends Board {
             boolean transcriptAdded = false;
             
         	if (recordRemoveCandidate && recordTranscript) {
-        		transcriptTemp.add("LimitedCandidates (3): " + it.toPositionString() + " remove " + cCandTmp.toString());
-        		actions.add(Action.REMOVE_CANDIDATE);
+        		transcript.addRemoveCandidates(Transcript.LIMITED_CANDIDATES, it.row, it.col, cCandTmp);
         		transcriptAdded = true;
         	}
         	
             boolean changed = EliminateCandidates(it.row, it.col, cCandTmp);
            
             if (!changed && transcriptAdded) {
-            	transcriptTemp.remove(transcriptTemp.size()-1);
-            	actions.remove(actions.size()-1);
+            	transcript.removeLast();
             }
 
             bSet |= changed;
@@ -732,7 +785,7 @@ public class Solver extends Board {
                             continue;
                         }
 
-                        bSet |= RemoveCandidateWithCheck(cell2.row, cell2.col, j, "LimitedDestination (4)");
+                        bSet |= RemoveCandidateWithCheck(cell2.row, cell2.col, j, Transcript.LIMITED_DESTINATION);
                     }
                     
                     if (bSet) {
@@ -805,7 +858,7 @@ public class Solver extends Board {
                             	for (Cell pCell : validCellSets[l]) {
                                     if (!pCell.known
                                             && (pCell.row == iRow11 || pCell.row == iRow12)) {
-                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, "DualRowLimitedDestination (5)");
+                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, Transcript.DUAL_ROW_LIMITED_DESTINATION);
                                     }
                                 }
                                 
@@ -877,7 +930,7 @@ public class Solver extends Board {
                                 for (Cell pCell : validCellSets[l]) {
                                     if (!pCell.known
                                             && (pCell.col == iCol11 || pCell.col == iCol12)) {
-                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, "DualColLimitedDestination (5)");
+                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, Transcript.DUAL_COL_LIMITED_DESTINATION);
                                     }
                                 }
                                 
@@ -897,22 +950,20 @@ public class Solver extends Board {
         return bSet;
     }
 
-    protected boolean RemoveCandidateWithCheck(int row, int col, int val, String prompt) {
+    protected boolean RemoveCandidateWithCheck(int row, int col, int val, int label) {
         if (!removeCandidate(row, col, val)) {
             return false;
         }
 
         if (recordRemoveCandidate && recordTranscript) {
-            transcriptTemp.add(prompt + ": " + toPositionString(row, col) + " remove " + val);
-            actions.add(Action.REMOVE_CANDIDATE);
+            transcript.add(Transcript.REMOVE_CANDIDATE, label, row, col, val);
         }
 
         if (sudokuCells[row][col].known) {
             int iTmp = sudokuCells[row][col].value;
 
             if (recordTranscript) {
-            transcriptTemp.add(prompt + ": " + toPositionString(row, col) + "=" + iTmp);
-            actions.add(Action.SET_VALUE);
+            transcript.add(Transcript.SET_VALUE, label, row, col, iTmp);
             }
 //            addToBoardHistory();
 
@@ -963,21 +1014,29 @@ public class Solver extends Board {
         }
 
         // save the current state
+        long snapshotStart = System.nanoTime();
         byte[] ba = serializeToByteArray();
+        stats.countSnapshot(ba.length, snapshotStart);
 
         ArrayList<Integer> candidates = makeCandidateList(i, j);
 
         for (Integer candidate : candidates) {
+            if (budget != null)
+                budget.countGuess();
+
+            Object branchEvent = SolverEvents.beginBranch();
+            long nodes = stats.searchNodes;
+            long start = System.nanoTime();
 //			cSudokuCells[i][j].setValue( candidate );
             setValue(i, j, candidate);
 
             if (recordTranscript) {
-            	transcriptTemp.add("TrialAndError (7): trying " + toPositionString(i, j) + "=" + candidate);
-            	actions.add(Action.SET_VALUE);
+            	transcript.add(Transcript.TRYING, Transcript.TRIAL_AND_ERROR, i, j, candidate);
             }
             addToBoardHistory();
 
             guessCount++;
+            stats.countSearchNode(guessCount);
             guessStack.push(new SetValueAction(i, j, candidate));
             guessBoard.setValue(i, j, candidate);
 
@@ -986,12 +1045,17 @@ public class Solver extends Board {
             }
 
             CrossEliminate(i, j, candidate);
+            stats.countPass(Technique.TRIAL_AND_ERROR, true, start);
 
             try {
-                sanityCheck(true);
+                checkContradiction(true);
 
                 Solve1();
 
+                if (branchEvent != null)
+                    SolverEvents.endBranch(branchEvent, puzzleHash, guessCount, i, j, candidate, 
+                            stats.searchNodes - nodes, solutions.size());
+
                 if (solved) {
                     if (solutions.size() > 1 && !findAllSolutions) {
                         return;
@@ -1007,19 +1071,23 @@ public class Solver extends Board {
                 }
 
             } catch (BoardException e) {
-                // do nothing
+                if (branchEvent != null)
+                    SolverEvents.endBranch(branchEvent, puzzleHash, guessCount, i, j, candidate, 
+                            stats.searchNodes - nodes, solutions.size());
             }
 
             //	      printf("failed.\n");
-            transcriptTemp.add("TrialAndError: back out " + toPositionString(i, j) + "=" + candidate);
-            actions.add(Action.SET_VALUE);
+            if (recordTranscript)
+            	transcript.add(Transcript.BACK_OUT, Transcript.TRIAL_AND_ERROR_BACK_OUT, i, j, candidate);
 
             guessCount--;
             guessStack.pop();
             guessBoard.reset(i, j);
 
             // restore original board
+            start = System.nanoTime();
             deserializeFromByteArray(ba);
+            stats.countBacktrack(start);
 
             addToBoardHistory();
 
@@ -1032,6 +1100,14 @@ public class Solver extends Board {
         cellIdx = savedIdx;
     }
 
+    @Override
+    boolean removeCandidate(int row, int col, int val) {
+        if (!super.removeCandidate(row, col, val))
+            return false;
+        stats.candidatesEliminated++;
+        return true;
+    }
+
     protected String toPositionString(int row, int col) {
         return "[" + (row + 1) + "][" + (col + 1) + "]";
     }
@@ -1079,20 +1155,77 @@ public class Solver extends Board {
         solutions.clear();
     }
 
+    /**
+     * bring the solver back to the state of a new one, so it can be reused for another solve.
+     * the board is not cleared, set it by setBoard().
+     *
+     * the structures are cleared in place, so the results got from the previous solve, e.g. the transcript,
+     * are not valid after it, see SolverFactory.getPooledSolver().
+     * only the stats are new, a SolveOutcome keeps them.
+     */
+    public void reset() {
+        solved = false;
+        guessed = false;
+        guessCount = 0;
+        findAllSolutions = false;
+        findAllSolutionsLimitExceeded = false;
+        noMultipleSolutionCheck = false;
+        randomSearch = true;
+        random.setSeed(System.nanoTime() ^ Thread.currentThread().getId());
+
+        cellPositionList = null;
+        cellIdx = 0;
+        guessStack.clear();
+        guessBoard.clear();
+
+        solutions.clear();
+        guessBoards.clear();
+        solutionStrings = null;
+        guessBoardStrings = null;
+
+        transcript.clear();
+        recordRemoveCandidate = true;
+        recordTranscript = false;
+        solutionTranscriptIndexes.clear();
+
+        boardHistory.clear();
+        recordBoardHistory = false;
+        boardHistoryTranscriptIdxs.clear();
+        solutionBoardIndexes.clear();
+        patternCellLists.clear();
+        patternCellList.clear();
+
+        for (int i=0; i<HIGHEST_CAPABILITY_LEVELS; i++)
+            capabilitiesUsed[i] = false;
+        highestCapabilityUsed = 0;
+
+        duplicateCells.clear();
+
+        budget = null;
+        stats = new SolveStats();
+        puzzleHash = 0;
+    }
+
     public boolean isMultipleSolutions() {
         return solutions.size() > 1;
     }
 
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    public void setBudget(SolveBudget budget) {
+        this.budget = budget;
+    }
+
     public void setRandomSeed(long seed) {
         random.setSeed(seed);
     }
 
     public Board getBoard() {
+        // the cells and the counts of the contradiction tracking, as setBoard()
         Board board = new Board();
-        board.sudokuCells = sudokuCells;
-        board.unknowns = unknowns;
-        board.validCellLists = validCellLists;
-        board.validCellSets = validCellSets;
+        board.setBoard(this);
         return board;
     }
     
@@ -1182,7 +1315,7 @@ public class Solver extends Board {
 				continue;
 			
 			if (!sudokuCells[row][col].known)
-				bset |= RemoveCandidateWithCheck(row, col, candidate, "XWing-row(6)");
+				bset |= RemoveCandidateWithCheck(row, col, candidate, Transcript.XWING_ROW);
 		}
 		
 		return bset;
@@ -1261,7 +1394,7 @@ public class Solver extends Board {
 				continue;
 			
 			if (!sudokuCells[row][col].known)
-				bset |= RemoveCandidateWithCheck(row, col, candidate, "XWing-col(6)");
+				bset |= RemoveCandidateWithCheck(row, col, candidate, Transcript.XWING_COL);
 		}
 		
 		return bset;
@@ -1269,8 +1402,32 @@ public class Solver extends Board {
 
 	////////////////////////////////////////////
     
+    /**
+     * the solutions formatted as boards, 
+     * they are formatted at the first call after a change, so avoid it if the text is not needed 
+     */
     public ArrayList<String> getSolutions() {
-        return solutions;
+        if (solutionStrings == null || solutionStrings.size() != solutions.size()) {
+            solutionStrings = new ArrayList<String>(solutions.size());
+            for (byte[] code : solutions) {
+                solutionStrings.add(new Board(PuzzleCodec.decodeGrid(code)).toString());
+            }
+        }
+        return solutionStrings;
+    }
+
+    public int getSolutionCount() {
+        return solutions.size();
+    }
+
+    public Puzzle getSolution(int idx) {
+        return PuzzleCodec.decodeGrid(solutions.get(idx));
+    }
+
+    // null if no guess was made for the solution
+    public Puzzle getGuessPuzzle(int idx) {
+        byte[] code = guessBoards.get(idx);
+        return code == null ? null : PuzzleCodec.decodePuzzle(code);
     }
 
     public void setFindAllSolutions(boolean findAllSolutions) {
@@ -1307,23 +1464,33 @@ public class Solver extends Board {
   		return cellPositionList;
     }
 
+    // the guess boards formatted as boards, an empty string if not guessed
     public ArrayList<String> getGuessBoards() {
-        return guessBoards;
+        if (guessBoardStrings == null || guessBoardStrings.size() != guessBoards.size()) {
+            guessBoardStrings = new ArrayList<String>(guessBoards.size());
+            for (byte[] code : guessBoards) {
+                guessBoardStrings.add(code == null ? "" : new Board(PuzzleCodec.decodePuzzle(code)).toSimpleString());
+            }
+        }
+        return guessBoardStrings;
     }
 
     public boolean isFindAllSolutionsLimitExceeded() {
         return findAllSolutionsLimitExceeded;
     }
 
-    public ArrayList<String> getTranscript() {
+    /**
+     * the entries are made text when got
+     */
+    public Transcript getTranscript() {
         return transcript;
     }
 
-    public ArrayList<Action> getActions() {
-        return actions;
+    public List<Action> getActions() {
+        return transcript.getActions();
     }
 
-    public ArrayList<Board> getBoardHistory() {
+    public BoardHistory getBoardHistory() {
         return boardHistory;
     }
 
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a client harness of the SolverServer
+ *
+ * each connection sends all the requests of a file, pipelined, and reads the responses.
+ * the responses are counted, and optionally printed.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SolverClient {
+
+	int port;
+	int connections = 1;
+	int repeat = 1;
+	boolean print = false;
+	String requestFile;
+
+	ArrayList<String> requests = new ArrayList<String>();
+
+	final AtomicLong responseCount = new AtomicLong();
+	final AtomicLong errorCount = new AtomicLong();
+
+	///////////////////////////////////
+
+	public static void main(String [] args) throws Exception
+	{
+		SolverClient client = new SolverClient();
+
+		client.execute(args);
+	}
+
+	void PrintHelp()
+	{
+		System.err.println("usage: [options] port request_file");
+		System.err.println("\t--connections n: number of connections, default is 1");
+		System.err.println("\t--repeat n: send the requests n times on each connection, default is 1");
+		System.err.println("\t--print: print the responses");
+		System.exit(1);
+	}
+
+	void ParseArguments(String [] args)
+	{
+		int i=0;
+		for (; i<args.length && args[i].startsWith("-"); i++)
+		{
+			String s = args[i];
+			if (s.equals("--connections")) {
+				connections = Integer.parseInt(args[++i]);
+			} else if (s.equals("--repeat")) {
+				repeat = Integer.parseInt(args[++i]);
+			} else if (s.equals("--print")) {
+				print = true;
+			} else
+				PrintHelp();
+		}
+
+		if (i+2 != args.length)
+			PrintHelp();
+
+		port = Integer.parseInt(args[i]);
+		requestFile = args[i+1];
+	}
+
+	private void execute(String[] args) throws Exception {
+		ParseArguments(args);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(requestFile), Daemon.UTF8));
+		String line;
+		while ( (line = reader.readLine()) != null ) {
+			if (line.trim().length() != 0)
+				requests.add(line);
+		}
+		reader.close();
+
+		Date start = new Date();
+
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i=0; i<connections; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						runConnection();
+					} catch (IOException e) {
+						System.err.println("connection failed: " + e.getMessage());
+					} catch (InterruptedException e) {
+						System.err.println("connection interrupted");
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		Date end = new Date();
+
+		long total = (long) connections * repeat * requests.size();
+		System.err.println("requests: " + total + ", responses: " + responseCount.get() + ", errors: " + errorCount.get());
+		System.err.println("miliseconds used: " + (end.getTime() - start.getTime()) );
+	}
+
+	/**
+	 * a sender thread writes the requests, while this thread reads the responses
+	 */
+	private void runConnection() throws IOException, InterruptedException {
+		final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Daemon.UTF8));
+			Thread sender = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int r=0; r<repeat; r++) {
+							for (String request : requests) {
+								writer.write(request);
+								writer.write('\n');
+							}
+							writer.flush();
+						}
+						socket.shutdownOutput();
+					} catch (IOException e) {
+						System.err.println("send failed: " + e.getMessage());
+					}
+				}
+			});
+			sender.start();
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Daemon.UTF8));
+			String line;
+			while ( (line = reader.readLine()) != null ) {
+				responseCount.incrementAndGet();
+				if (line.contains("\"error\":"))
+					errorCount.incrementAndGet();
+				if (print) {
+					synchronized (System.out) {
+						System.out.println(line);
+					}
+				}
+			}
+
+			sender.join();
+		} finally {
+			socket.close();
+		}
+	}
+
+}
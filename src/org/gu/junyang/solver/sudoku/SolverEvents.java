@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the flight recorder events of the solving, see JfrSolverEvents for the events.
+ *
+ * the events are recorded by a Recorder, JfrSolverEvents, which is loaded by reflection when jdk.jfr is there,
+ * so the solver still builds for Java 8, and runs on a JRE without it.
+ * when no recording is running, a begin returns null, at the cost of a field read,
+ * and the caller skips the end; so the events can be left in the hot paths.
+ *
+ * usage:
+ * 	Object event = SolverEvents.beginPass();
+ * 	...
+ * 	if (event != null)
+ * 		SolverEvents.endPass(event, ...);
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import org.apache.log4j.Logger;
+
+final class SolverEvents {
+
+	static final Logger logger = Logger.getLogger(SolverEvents.class);
+
+	static final String JFR_RECORDER_CLASS_NAME = "org.gu.junyang.solver.sudoku.JfrSolverEvents";
+
+	/**
+	 * the backend of the events, it sets recording while a recording is running
+	 */
+	interface Recorder {
+		Object beginOperation(String operation, long puzzleHash);
+
+		void endOperation(Object event, long resultHash, int level, String outcome, String limit,
+				long nodes, long guesses);
+
+		Object beginBranch();
+
+		void endBranch(Object event, long puzzleHash, int depth, int row, int col, int value,
+				long nodes, int solutions);
+
+		Object beginPass();
+
+		void endPass(Object event, String technique, long puzzleHash, boolean progress, long eliminations);
+	}
+
+	// set by the recorder while a recording is running, so it is never set if there is no recorder
+	static volatile boolean recording = false;
+
+	static Recorder recorder = null;
+
+	static {
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			recorder = Class.forName(JFR_RECORDER_CLASS_NAME).asSubclass(Recorder.class)
+					.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			logger.debug("flight recorder not available - " + e.getMessage());
+		} catch (ReflectiveOperationException e) {
+			logger.debug("flight recorder not available - " + e);
+		} catch (LinkageError e) {
+			logger.debug("flight recorder not available - " + e);
+		}
+	}
+
+	private SolverEvents() {
+	}
+
+	static boolean isRecording() {
+		return recording;
+	}
+
+	///////////////////////////////////
+	// a Sudoku operation, e.g. solve, reduce
+
+	static Object beginOperation(String operation, Board puzzle) {
+		if (!recording)
+			return null;
+		return recorder.beginOperation(operation, puzzle == null ? 0 : puzzleHash(puzzle));
+	}
+
+	static Object beginOperation(String operation, Puzzle puzzle) {
+		if (!recording)
+			return null;
+		return recorder.beginOperation(operation, puzzle == null ? 0 : puzzleHash(puzzle));
+	}
+
+	/**
+	 * @param result	the puzzle produced, e.g. the reduced puzzle, null if none
+	 * @param outcome	e.g. the SolveResult, null if none
+	 * @param budget	of the operation, the nodes and the guesses so far
+	 */
+	static void endOperation(Object event, Board result, int level, Object outcome,
+			SolveLimits.Reason limitReason, SolveBudget budget) {
+		recorder.endOperation(event, result == null ? 0 : puzzleHash(result), level,
+				outcome == null ? null : outcome.toString(), limitReason == null ? null : limitReason.toString(),
+				budget.getNodes(), budget.getGuesses());
+	}
+
+	static void endOperation(Object event, Puzzle result, int level, Object outcome,
+			SolveLimits.Reason limitReason, SolveBudget budget) {
+		recorder.endOperation(event, result == null ? 0 : puzzleHash(result), level,
+				outcome == null ? null : outcome.toString(), limitReason == null ? null : limitReason.toString(),
+				budget.getNodes(), budget.getGuesses());
+	}
+
+	///////////////////////////////////
+	// a trial and error branch: a value tried, and the search under it
+
+	static Object beginBranch() {
+		if (!recording)
+			return null;
+		return recorder.beginBranch();
+	}
+
+	static void endBranch(Object event, long puzzleHash, int depth, int row, int col, int value,
+			long nodes, int solutions) {
+		recorder.endBranch(event, puzzleHash, depth, row, col, value, nodes, solutions);
+	}
+
+	///////////////////////////////////
+	// a pass of a technique
+
+	static Object beginPass() {
+		if (!recording)
+			return null;
+		return recorder.beginPass();
+	}
+
+	static void endPass(Object event, SolveStats.Technique technique, long puzzleHash,
+			boolean progress, long eliminations) {
+		recorder.endPass(event, technique.toString(), puzzleHash, progress, eliminations);
+	}
+
+	///////////////////////////////////
+
+	/**
+	 * a 64 bit FNV-1a hash of the values, the same for a board and a puzzle of the same values
+	 */
+	static long puzzleHash(Board board) {
+		long hash = 0xcbf29ce484222325L;
+		for (int row=0; row<9; row++) {
+			for (int col=0; col<9; col++) {
+				Cell cell = board.sudokuCells[row][col];
+				hash ^= cell.known ? cell.value : 0;
+				hash *= 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+	static long puzzleHash(Puzzle puzzle) {
+		long hash = 0xcbf29ce484222325L;
+		for (int row=0; row<9; row++) {
+			for (int col=0; col<9; col++) {
+				hash ^= puzzle.values[row][col];
+				hash *= 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+}
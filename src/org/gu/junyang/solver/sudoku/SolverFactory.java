@@ -19,49 +19,74 @@
 
 /**
  * this class generates Solver instances based on selectable classes
+ * 
+ * there is one factory per solver class, it is thread safe.
+ * besides new solvers, a factory keeps a solver per thread, that is reset and reused by getPooledSolver().
  */
 
 package org.gu.junyang.solver.sudoku;
 
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class SolverFactory {
 
     public static final String SolverDefaultClassName = "org.gu.junyang.solver.sudoku.Solver";
     public static final String SolverNonGreedyClassName = "org.gu.junyang.solver.sudoku.SolverNonGreedy";
     
-    static String solverClassName = SolverDefaultClassName;
-//    static String solverClassName = SolverNonGreedyClassName; 	// for testing purposes
+    static volatile String solverClassName = SolverDefaultClassName;
+//    static volatile String solverClassName = SolverNonGreedyClassName; 	// for testing purposes
+    
+    static final ConcurrentHashMap<String, SolverFactory> factories = new ConcurrentHashMap<String, SolverFactory>();
+    
+    final Constructor<? extends Solver> solverConstructor;
     
-    Class<Solver> solverClass;
+    final ThreadLocal<Solver> pooledSolver = new ThreadLocal<Solver>();
     
-	@SuppressWarnings("unchecked")
-	private SolverFactory() {
+	// not shared, as of newInstance(), e.g. of a subclass that sets up the solvers
+	SolverFactory(String solverClassName) {
+		Constructor<? extends Solver> constructor = null;
     	try {
-			solverClass =  (Class<Solver>) Class.forName(solverClassName);
+			constructor = Class.forName(solverClassName).asSubclass(Solver.class).getConstructor();
 		} catch (ClassNotFoundException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 			System.exit(1);
+		} catch (NoSuchMethodException e) {
+			e.printStackTrace();
+			System.exit(1);
 		}
+		solverConstructor = constructor;
 	}
     
 	public static SolverFactory newInstance() {
-		SolverFactory solverFactory = new SolverFactory();
-		return solverFactory;
+		return newInstance(solverClassName);
 	}
 	
+	/**
+	 * the solver class of newInstance() from then on, the factories already got are not changed
+	 */
 	public static void setSolverClassName(String solverClassName) {
 		SolverFactory.solverClassName = solverClassName;
 	}
 
+	/**
+	 * @param solverClassName	e.g. SolverNonGreedyClassName
+	 */
+	public static SolverFactory newInstance(String solverClassName) {
+		SolverFactory solverFactory = factories.get(solverClassName);
+		if (solverFactory == null) {
+			factories.putIfAbsent(solverClassName, new SolverFactory(solverClassName));
+			solverFactory = factories.get(solverClassName);
+		}
+		return solverFactory;
+	}
+
 	public Solver newSolver() {
 		Solver solver=null;
 		try {
-			solver = solverClass.newInstance();
-		} catch (InstantiationException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-			System.exit(1);
-		} catch (IllegalAccessException e1) {
+			solver = solverConstructor.newInstance();
+		} catch (Exception e1) {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
 			System.exit(1);
@@ -69,5 +94,19 @@ public class SolverFactory {
 		return solver;
 	}
 	
+	/**
+	 * the solver of the calling thread, reset to the state of a new solver.
+	 * it is only valid until the next call by the same thread, 
+	 * so do not keep it, or the results got from it, e.g. the transcript, beyond that.
+	 */
+	public Solver getPooledSolver() {
+		Solver solver = pooledSolver.get();
+		if (solver == null) {
+			solver = newSolver();
+			pooledSolver.set(solver);
+		} else
+			solver.reset();
+		return solver;
+	}
 	
 }
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import org.gu.junyang.solver.sudoku.SolveStats.Technique;
 import org.gu.junyang.utilities.ArrayListUtils;
 
 public class SolverNonGreedy extends Solver {
@@ -46,6 +47,12 @@ public class SolverNonGreedy extends Solver {
     
     ////////////////////////////////////////////////
 
+    @Override
+    public void reset() {
+        super.reset();
+        newlySetCells = null;
+    }
+
     ////////////////////////////////////////
     // capability level
     // 1: basic: eliminate candidate (single candidate)
@@ -58,24 +65,18 @@ public class SolverNonGreedy extends Solver {
     /////////////////////////////////////////
 
     /**
-     * possible outcome:
-     * true: solved, please check multiple solutions flag
-     * false: not solved (with limited capability level
-     * BoardException is thrown, the puzzle is not solvable;
-     * 
-     * IMPORTANT: do not reuse a solver class
-     *
-     * @return
-     * @throws BoardException
+     * the cross elimination is a pass of Solve1(), instead of being done once ahead
      */
     @Override
-    public boolean Solve() throws BoardException {
+    protected void Solve0() throws BoardException {
         if (cellPositionList==null)
         	makeCellList();	
 
         addToBoardHistory();
 
-        sanityCheck();
+        // the board may have been set by its cells, from here on it is kept up incrementally
+        recount();
+        checkContradiction(false);
         
         Solve1();
 
@@ -96,8 +97,6 @@ public class SolverNonGreedy extends Solver {
         		}
         	}
         }
-        
-        return (solved);
     }
 	
     @Override
@@ -107,8 +106,11 @@ public class SolverNonGreedy extends Solver {
         // so it doesn't appear here
         
         while (unknowns != 0) {
+            if (budget != null)
+                budget.countNode();
+
     		
-        	if (CrossEliminateAll()) {
+        	if (applyTechnique(Technique.CROSS_ELIMINATION)) {
         		capabilitiesUsed[0] = true;
             	addToBoardHistory();
         		continue;
@@ -119,31 +121,31 @@ public class SolverNonGreedy extends Solver {
             	newlySetCells = new CellList();
             }
             
-            if (singleDestinationAll()) {
+            if (applyTechnique(Technique.SINGLE_DESTINATION)) {
             	capabilitiesUsed[1] = true;
             	addToBoardHistory();
             	continue;
             }
 
-            if ( limitedCandidates2Search() || limitedCandidates3Search() ) {
+            if ( applyTechnique(Technique.LIMITED_CANDIDATES_2) || applyTechnique(Technique.LIMITED_CANDIDATES_3) ) {
             	capabilitiesUsed[2] = true;
             	addToBoardHistory();
             	continue;
             }
 
-            if ( limitedDestination() ) {
+            if ( applyTechnique(Technique.LIMITED_DESTINATION) ) {
             	capabilitiesUsed[3] = true;
             	addToBoardHistory();
             	continue;
             }
 
-            if ( dualRowLimitedDestination() || dualColLimitedDestination() ) {
+            if ( applyTechnique(Technique.DUAL_ROW_LIMITED_DESTINATION) || applyTechnique(Technique.DUAL_COL_LIMITED_DESTINATION) ) {
             	capabilitiesUsed[4] = true;
             	addToBoardHistory();
             	continue;
             }
             
-            if (xwingRow() || xwingCol()) {
+            if (applyTechnique(Technique.XWING_ROW) || applyTechnique(Technique.XWING_COL)) {
             	capabilitiesUsed[5] = true;
             	addToBoardHistory();
             	continue;
@@ -154,7 +156,7 @@ public class SolverNonGreedy extends Solver {
         }
         
         if (unknowns == 0) {
-            sanityCheck();
+            checkContradiction(false);
 
             solved = true;
 
@@ -166,24 +168,7 @@ public class SolverNonGreedy extends Solver {
             // print guessStack
 //				printGuessStack();
 
-            if (guessed) {
-//					System.out.println("guessed values:");
-                guessBoards.add(guessBoard.toSimpleString());
-            } else {
-                guessBoards.add("");
-            }
-
-            if (solutions.size() == FIND_ALL_SOLUTIONS_LIMIT) {
-                findAllSolutionsLimitExceeded = true;
-            } else {
-                solutions.add(toString());
-                if (recordBoardHistory) {
-                    solutionBoardIndexes.add(boardHistory.size() - 1);
-                }
-                if (recordTranscript) {
-                    solutionTranscriptIndexes.add(transcript.size() - 1);
-                }
-            }
+            addSolution();
         } else {
         	guessed = true;
         	SolveRecursive();
@@ -294,8 +279,7 @@ public class SolverNonGreedy extends Solver {
                 bSet = true;
                 
                 if (recordTranscript) {
-                	transcriptTemp.add("SingleDestination (2): " + toPositionString(iRow, iCol) + "=" + (value + 1));
-                	actions.add(Action.SET_VALUE);
+                	transcript.add(Transcript.SET_VALUE, Transcript.SINGLE_DESTINATION, iRow, iCol, value + 1);
                 }
 
                 patternCellList.addAll(validCellSets[cellSetIdx]);
@@ -349,8 +333,7 @@ public class SolverNonGreedy extends Solver {
             int iTmp = sudokuCells[row][col].value;
 
             if (recordTranscript) {
-            	transcriptTemp.add("EliminateCandidates (1): " + toPositionString(row, col) + "=" + iTmp);
-            	actions.add(Action.SET_VALUE);
+            	transcript.add(Transcript.SET_VALUE, Transcript.ELIMINATE_CANDIDATES, row, col, iTmp);
             }
 //            addToBoardHistory();
 
@@ -399,16 +382,14 @@ public class SolverNonGreedy extends Solver {
             boolean transcriptAdded = false;
             
         	if (recordRemoveCandidate && recordTranscript) {
-        		transcriptTemp.add("LimitedCandidates (3): " + it.toPositionString() + " remove " + cCandTmp.toString());
-        		actions.add(Action.REMOVE_CANDIDATE);
+        		transcript.addRemoveCandidates(Transcript.LIMITED_CANDIDATES, it.row, it.col, cCandTmp);
         		transcriptAdded = true;
         	}
         	
             boolean changed = EliminateCandidates(it.row, it.col, cCandTmp);
            
             if (!changed && transcriptAdded) {
-            	transcriptTemp.remove(transcriptTemp.size()-1);
-            	actions.remove(actions.size()-1);
+            	transcript.removeLast();
             }
 
             bSet |= changed;
@@ -631,7 +612,7 @@ public class SolverNonGreedy extends Solver {
                             continue;
                         }
 
-                        bSet |= RemoveCandidateWithCheck(cell2.row, cell2.col, j, "LimitedDestination (4)");
+                        bSet |= RemoveCandidateWithCheck(cell2.row, cell2.col, j, Transcript.LIMITED_DESTINATION);
                     }
                     
                     if (bSet) {
@@ -705,7 +686,7 @@ public class SolverNonGreedy extends Solver {
                             	for (Cell pCell : validCellSets[l]) {
                                     if (!pCell.known
                                             && (pCell.row == iRow11 || pCell.row == iRow12)) {
-                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, "DualRowLimitedDestination (5)");
+                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, Transcript.DUAL_ROW_LIMITED_DESTINATION);
                                     }
                                 }
                                 
@@ -778,7 +759,7 @@ public class SolverNonGreedy extends Solver {
                             	for (Cell pCell : validCellSets[l]) {
                                     if (!pCell.known
                                             && (pCell.col == iCol11 || pCell.col == iCol12)) {
-                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, "DualColLimitedDestination (5)");
+                                        bSet |= RemoveCandidateWithCheck(pCell.row, pCell.col, iVal, Transcript.DUAL_COL_LIMITED_DESTINATION);
                                     }
                                 }
                                 
@@ -798,14 +779,13 @@ public class SolverNonGreedy extends Solver {
     }
 
     @Override
-    protected boolean RemoveCandidateWithCheck(int row, int col, int val, String prompt) {
+    protected boolean RemoveCandidateWithCheck(int row, int col, int val, int label) {
         if (!removeCandidate(row, col, val)) {
             return false;
         }
 
         if (recordRemoveCandidate && recordTranscript) {
-        	transcriptTemp.add(prompt + ": " + toPositionString(row, col) + " remove " + val);
-            actions.add(Action.REMOVE_CANDIDATE);
+        	transcript.add(Transcript.REMOVE_CANDIDATE, label, row, col, val);
         }
 
         if (sudokuCells[row][col].known) {
@@ -816,8 +796,7 @@ public class SolverNonGreedy extends Solver {
             int iTmp = sudokuCells[row][col].value;
 
             if (recordTranscript) {
-            	transcriptTemp.add(prompt + ": " + toPositionString(row, col) + "=" + iTmp);
-            actions.add(Action.SET_VALUE);
+            	transcript.add(Transcript.SET_VALUE, label, row, col, iTmp);
             }
 
             if (debug) {
@@ -867,35 +846,48 @@ public class SolverNonGreedy extends Solver {
         }
 
         // save the current state
+        long snapshotStart = System.nanoTime();
         byte[] ba = serializeToByteArray();
+        stats.countSnapshot(ba.length, snapshotStart);
 
         ArrayList<Integer> candidates = makeCandidateList(i, j);
 
         for (Integer candidate : candidates) {
+            if (budget != null)
+                budget.countGuess();
+
+            Object branchEvent = SolverEvents.beginBranch();
+            long nodes = stats.searchNodes;
+            long start = System.nanoTime();
 //			cSudokuCells[i][j].setValue( candidate );
             setValue(i, j, candidate);
 
             if (recordTranscript) {
-            	transcriptTemp.add("TrialAndError (7): trying " + toPositionString(i, j) + "=" + candidate);
-            	actions.add(Action.SET_VALUE);
+            	transcript.add(Transcript.TRYING, Transcript.TRIAL_AND_ERROR, i, j, candidate);
             }
 //            addToBoardHistory();
 
             guessCount++;
+            stats.countSearchNode(guessCount);
             guessStack.push(new SetValueAction(i, j, candidate));
             guessBoard.setValue(i, j, candidate);
 
             newlySetCells.add(sudokuCells[i][j]);
+            stats.countPass(Technique.TRIAL_AND_ERROR, true, start);
             
             if (debug) {
                 logger.debug(toString());
             }
 
             try {
-                sanityCheck();
+                checkContradiction(false);
 
                 Solve1();
 
+                if (branchEvent != null)
+                    SolverEvents.endBranch(branchEvent, puzzleHash, guessCount, i, j, candidate, 
+                            stats.searchNodes - nodes, solutions.size());
+
                 if (solved) {
                     if (solutions.size() > 1 && !findAllSolutions) {
                         return;
@@ -911,21 +903,25 @@ public class SolverNonGreedy extends Solver {
                 }
 
             } catch (BoardException e) {
-                // do nothing
+                if (branchEvent != null)
+                    SolverEvents.endBranch(branchEvent, puzzleHash, guessCount, i, j, candidate, 
+                            stats.searchNodes - nodes, solutions.size());
             }
             
             newlySetCells.clear();
             
             //	      printf("failed.\n");
-            transcriptTemp.add("TrialAndError: back out " + toPositionString(i, j) + "=" + candidate);
-            actions.add(Action.SET_VALUE);
+            if (recordTranscript)
+            	transcript.add(Transcript.BACK_OUT, Transcript.TRIAL_AND_ERROR_BACK_OUT, i, j, candidate);
 
             guessCount--;
             guessStack.pop();
             guessBoard.reset(i, j);
 
             // restore original board
+            start = System.nanoTime();
             deserializeFromByteArray(ba);
+            stats.countBacktrack(start);
 
             addToBoardHistory();
 
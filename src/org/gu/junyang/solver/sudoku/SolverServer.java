@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a local TCP server of the JSON line protocol, on the loopback address.
+ *
+ * each connection is served by its own thread, which only reads requests and waits,
+ * the solving is done by the bounded pool of the Daemon, shared by all connections.
+ * the threads are platform threads of a cached pool, as the project targets Java 8, see .classpath.
+ * requests are pipelined on a connection, see Daemon for the admission control.
+ *
+ * connections over the limit are answered "server busy" and closed.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.gu.junyang.utilities.Json;
+
+public class SolverServer implements Runnable {
+
+	Logger logger = Logger.getLogger(this.getClass());
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 256;
+
+	final Daemon daemon;
+
+	final ServerSocket serverSocket;
+
+	int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	final AtomicInteger connectionCount = new AtomicInteger();
+
+	// connection threads, mostly blocked on reading
+	final ExecutorService connectionThreads = Executors.newCachedThreadPool();
+
+	///////////////////////////////////
+
+	/**
+	 * @param port	0 for any free port, see getPort()
+	 */
+	public SolverServer(int port, Daemon daemon) throws IOException {
+		this.daemon = daemon;
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * accept connections until closed
+	 */
+	public void run() {
+		logger.info("listening on port " + getPort());
+		try {
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				try {
+					socket.setTcpNoDelay(true);
+				} catch (IOException e) {
+					// e.g. reset by the peer already, only this connection is dropped
+					logger.info("connection dropped - " + e.getMessage());
+					close(socket);
+					continue;
+				}
+
+				if (connectionCount.incrementAndGet() > maxConnections) {
+					connectionCount.decrementAndGet();
+					reject(socket);
+					continue;
+				}
+
+				connectionThreads.execute(new Runnable() {
+					public void run() {
+						try {
+							daemon.serve(socket.getInputStream(), socket.getOutputStream());
+						} catch (IOException e) {
+							logger.info("connection closed - " + e.getMessage());
+						} catch (InterruptedException e) {
+							logger.info("connection interrupted");
+						} finally {
+							connectionCount.decrementAndGet();
+							close(socket);
+						}
+					}
+				});
+			}
+		} catch (SocketException e) {
+			// closed
+			logger.info("server socket closed.");
+		} catch (IOException e) {
+			logger.error("accept failed", e);
+		}
+	}
+
+	/**
+	 * stop accepting, the connections are served until the clients close them
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		connectionThreads.shutdown();
+	}
+
+	///////////////////////////////////
+
+	private void reject(Socket socket) {
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write( (Json.toJson(RequestHandler.error(null, "server busy")) + "\n").getBytes(Daemon.UTF8) );
+			out.flush();
+		} catch (IOException e) {
+			logger.debug("reject failed - " + e.getMessage());
+		}
+		close(socket);
+	}
+
+	private void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			logger.debug("close failed - " + e.getMessage());
+		}
+	}
+
+	///////////////////////////////////
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+}
@@ -25,6 +25,7 @@
 package org.gu.junyang.solver.sudoku;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import org.apache.log4j.Logger;
@@ -41,7 +42,8 @@ public class Sudoku {
 		SOLVED,
 		SOLVED_MULTIPLE_SOLUTIONS,
 		UNSOLVED,	// because of limited capability level
-		UNSOLVABLE	// conflict in puzzle
+		UNSOLVABLE,	// conflict in puzzle
+		LIMIT_REACHED	// stopped by the solve limits, see getLimitReason()
 	}
 	
 	boolean findAllSolutions = false;
@@ -81,6 +83,32 @@ public class Sudoku {
     boolean recordBoardHistory = false;		// since this can be a performance drag, only record when required.
 
     SolverFactory solverFactory = SolverFactory.newInstance();
+
+    // if set, the solver of the thread is reused, see SolverFactory.getPooledSolver()
+    // only for a Sudoku whose results are consumed before the thread's next solve
+    boolean usePooledSolver = false;
+
+    // if set, isSolvable() and reduce consult the cache first
+    SolveCache solveCache = null;
+
+    // the limits of each public operation, including the operations it calls
+    SolveLimits solveLimits = SolveLimits.NONE;
+
+    // the budget of the operation in progress
+    volatile SolveBudget budget;
+
+    // the depth of the nested operations, a limit is handled by the outermost one
+    int operationDepth = 0;
+
+    // why the last operation stopped short, null if it did not
+    SolveLimits.Reason limitReason;
+
+    // for reduce, the best reduction so far
+    byte [] reducedSoFar;
+
+    // for reduce, the unavoidable sets of the solution, and the removals they rejected
+    UnavoidableSets unavoidableSets;
+    int unavoidableRejections;
     
 	//////////////////////////////////////////////
 	
@@ -89,6 +117,8 @@ public class Sudoku {
 	 * upon completion, the following queries can be used
 	 * 	getPuzzleCount()
 	 * 	getHighestLevel()
+	 * if a limit is reached, the last puzzle generated is returned, which is not of the target capability,
+	 * 	or null if none.
 	 * @param targetCapability
 	 * @throws Exception
 	 */
@@ -99,27 +129,49 @@ public class Sudoku {
 		// this must be true, otherwise, every puzzle generated would be the same
 		randomSearch=true;
 		
-		do {
-			board = generatePuzzle(messagePoster);
-			puzzleCount++;
-			
-			if (level != targetCapability) {
-				// try to reduce and check level again
-				reduce(board.getPuzzle());
-				if (reductionCount!=0) {
-					level = getLevel(board);
-					messagePoster.PostMessage("after reduction, puzzle level: " + level);
+		// the last puzzle generated, and its level
+		Board lastBoard = null;
+		int lastLevel = 0;
+		
+		Object event = SolverEvents.beginOperation("generateWithCapability", (Board) null);
+		beginOperation();
+		try {
+			do {
+				budget.check();
+				
+				board = generatePuzzle(messagePoster);
+				puzzleCount++;
+				
+				if (level != targetCapability) {
+					// try to reduce and check level again
+					reduce(board.getPuzzle());
+					if (reductionCount!=0) {
+						level = getLevel(board);
+						messagePoster.PostMessage("after reduction, puzzle level: " + level);
+					}
 				}
-			}
+				
+				lastBoard = board;
+				lastLevel = level;
+				
+				if (useRandomSeed) {
+					messagePoster.PostMessage("generated # " + randomSeed + " puzzles tried: " + puzzleCount);
+					randomSeed++;				
+				}
+				else
+					messagePoster.PostMessage("puzzles tried: " + puzzleCount);
+	
+			} while (level != targetCapability);
 			
-			if (useRandomSeed) {
-				messagePoster.PostMessage("generated # " + randomSeed + " puzzles tried: " + puzzleCount);
-				randomSeed++;				
-			}
-			else
-				messagePoster.PostMessage("puzzles tried: " + puzzleCount);
-
-		} while (level != targetCapability);
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			board = lastBoard;
+			level = lastLevel;
+		} finally {
+			endOperation();
+			if (event != null)
+				SolverEvents.endOperation(event, board, level, puzzleCount, limitReason, budget);
+		}
 
 //		System.out.println(board.toSimpleString());
 //		System.err.println("found.");
@@ -145,7 +197,25 @@ public class Sudoku {
 	 * @return
 	 */
 	public SolveResult solve(Board puzzleBoard) {
-		solver = solverFactory.newSolver();
+		Object event = SolverEvents.beginOperation("solve", puzzleBoard);
+		beginOperation();
+		SolveResult solveResult = null;
+		try {
+			solveResult = solve1(puzzleBoard);
+			return solveResult;
+		} finally {
+			endOperation();
+			if (event != null)
+				SolverEvents.endOperation(event, (Board) null, level, solveResult, limitReason, budget);
+		}
+	}
+
+	/**
+	 * if a limit is reached, the board is where the solver stopped, 
+	 * and the solutions found so far can be queried.
+	 */
+	private SolveResult solve1(Board puzzleBoard) {
+		solver = newSolver();
 
 		solver.setBoard(puzzleBoard);
 		solver.setFindAllSolutions(findAllSolutions);
@@ -160,6 +230,12 @@ public class Sudoku {
 			logger.info(message);
 			board = solver.getBoard();
 			return SolveResult.UNSOLVABLE;
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			message = e.getMessage();
+			level = solver.getHighestCapabilityUsed();
+			board = solver.getBoard();
+			return SolveResult.LIMIT_REACHED;
 		}
 
 		level = solver.getHighestCapabilityUsed();
@@ -193,7 +269,7 @@ public class Sudoku {
 	 * @throws ProgramErrorException
 	 */
 	private SolveResult isSolvable1(Board puzzleboard) throws ProgramErrorException {
-		solver = solverFactory.newSolver();
+		solver = newSolver();
 		solver.setBoard(puzzleboard);
 
 		try {
@@ -219,12 +295,50 @@ public class Sudoku {
 	}
 
         public SolveResult isSolvable(Board puzzleboard) throws ProgramErrorException {
-            return isSolvable1(new Board(puzzleboard));
+            beginOperation();
+            try {
+                if (solveCache != null) {
+                    // a board with candidate edits can not be keyed by its puzzle
+                    PuzzleKey key = PuzzleKey.of(puzzleboard);
+                    if (key != null) {
+                        return isSolvableCached(key.toPuzzle());
+                    }
+                }
+                return isSolvable1(new Board(puzzleboard));
+            } catch (SolveLimitException e) {
+                handleLimit(e);
+                return SolveResult.LIMIT_REACHED;
+            } finally {
+                endOperation();
+            }
         }
 
 	// does not take candidate list as input
 	public SolveResult isSolvable(Puzzle puzzle) throws ProgramErrorException {
-		return isSolvable1(new Board(puzzle));
+		beginOperation();
+		try {
+			if (solveCache != null)
+				return isSolvableCached(puzzle);
+			return isSolvable1(new Board(puzzle));
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			return SolveResult.LIMIT_REACHED;
+		} finally {
+			endOperation();
+		}
+	}
+
+	// on a miss, it is solved here, by the solver of this Sudoku
+	private SolveResult isSolvableCached(Puzzle puzzle) throws ProgramErrorException {
+		SolveCache.Entry entry = solveCache.peek(puzzle);
+		if (entry != null) {
+			level = entry.level;
+			return entry.solveResult;
+		}
+
+		SolveResult solveResult = isSolvable1(new Board(puzzle));
+		solveCache.put(puzzle, solveResult, solveResult == SolveResult.UNSOLVABLE ? 0 : level);
+		return solveResult;
 	}
 	
 	/**
@@ -238,9 +352,26 @@ public class Sudoku {
 	 * @throws Exception
 	 */
 	public Board generatePuzzle(MessagePoster messagePoster) throws ProgramErrorException {
+		Object event = SolverEvents.beginOperation("generate", (Board) null);
+		beginOperation();
+		try {
+			return generatePuzzle1(messagePoster);
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			board = null;
+			return null;
+		} finally {
+			endOperation();
+			if (event != null)
+				SolverEvents.endOperation(event, board, level, null, limitReason, budget);
+		}
+	}
+
+	private Board generatePuzzle1(MessagePoster messagePoster) throws ProgramErrorException {
 		// when generate, solve an empty puzzle
 		
-		solver = solverFactory.newSolver();
+		solver = newSolver();
+		solver.setBoard(new Board());
 		solver.setNoMultipleSolutionCheck(true);	// do not look for multiple solutions
 		solver.setRandomSearch(randomSearch);
 		solver.setRecordTranscript(recordTranscript);
@@ -265,7 +396,8 @@ public class Sudoku {
 //		System.out.println("the guessed values is the puzzle.");
 
 		// print out the generated puzzle
-		board = solver.getGuessBoard();
+		// copied, the guess board of a pooled solver is cleared when the solver is reused
+		board = new Board(solver.getGuessBoard());
 //		System.out.println(board.toSimpleString());
 //		System.out.println();
 		
@@ -287,11 +419,33 @@ public class Sudoku {
 	 * IMPORTANT: the input puzzle must be solvable
 	 * upon completion the following queries can be used to obtain more info
 	 * 	getReduceCount() - if 0, no reduction is performed
+	 * if a limit is reached, the best reduction so far is returned.
 	 *  
 	 * @return
 	 */
 	public Board reduce(Puzzle puzzle) throws ProgramErrorException {
+		Object event = SolverEvents.beginOperation("reduce", puzzle);
+		beginOperation();
+		try {
+			return reducePuzzle(puzzle);
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			if (reducedSoFar == null)
+				return null;
+			board = new Board();
+			board.deserializeFromByteArray(reducedSoFar);
+			return board;
+		} finally {
+			endOperation();
+			if (event != null)
+				SolverEvents.endOperation(event, reductionCount != 0 ? board : null, level, reductionCount, 
+						limitReason, budget);
+		}
+	}
+
+	private Board reducePuzzle(Puzzle puzzle) throws ProgramErrorException {
 		reductionCount=0;
+		reducedSoFar = null;
 		
 		// check initial condition
 		SolveResult solveResult = isSolvable(new Board(puzzle));
@@ -310,9 +464,18 @@ public class Sudoku {
 		else
 			cellList = Solver.getRandomCellPositionList();
 		
+		// the clue removals leaving an unavoidable set of the solution without a clue are not solved
+		FastSolver fastSolver = new FastSolver();
+		fastSolver.setPuzzle(puzzle);
+		fastSolver.countSolutions(1);
+		unavoidableSets = UnavoidableSets.of(fastSolver.getSolution());
+		unavoidableRejections = 0;
+
 		board = new Board(puzzle);
+		reducedSoFar = board.serializeToByteArray();
 
 		reduce1();
+		logger.debug("removals rejected by the unavoidable sets: " + unavoidableRejections);
 		
 		return board;
 	}
@@ -322,35 +485,69 @@ public class Sudoku {
 		// save the board
 		byte [] generatedPuzzle = board.serializeToByteArray();
 		
+		// the clues of the board
+		long low = UnavoidableSets.getLow(board);
+		long high = UnavoidableSets.getHigh(board);
+		
 		for (CellPosition cellPosition : cellList) {
 			if ( ! board.sudokuCells[cellPosition.row][cellPosition.col].known )
 				continue;
 
+			budget.check();
+
+			// multiple solutions for sure, no solve needed
+			int cell = cellPosition.row * 9 + cellPosition.col;
+			if (cell < 64 ? !unavoidableSets.isHitBy(low & ~(1L << cell), high)
+					: !unavoidableSets.isHitBy(low, high & ~(1L << (cell - 64)))) {
+				unavoidableRejections++;
+				continue;
+			}
+
 			board.reset(cellPosition.row, cellPosition.col);
 
 			// save the board, because solver mutates it
 			byte [] saved = board.serializeToByteArray();
 			
-			// try solve it
-			solver = solverFactory.newSolver();
-			solver.setBoard(board);
+			boolean multipleSolutions;
 			
-			// we only want to know whether it is solvable or not, and whether has multiple solutions 
-			solver.setRecordTranscript(false);
-			solver.setRecordBoardHistory(false);
+			SolveCache.Entry cachedEntry = null;
+			Puzzle reducedPuzzle = null;
+			if (solveCache != null) {
+				reducedPuzzle = board.getPuzzle();
+				cachedEntry = solveCache.peek(reducedPuzzle);
+			}
 			
-			try {
-				solver.Solve();
-			} catch (BoardException e) {
-                            // should not happen
-                            throw new ProgramErrorException(e.getMessage());
-//				e.printStackTrace();
-//				System.exit(1);
+			if (cachedEntry != null) {
+				multipleSolutions = cachedEntry.solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS;
+			} else {
+				// try solve it, only the result is needed
+				Solver solver = newSolver();
+				solver.setBoard(board);
+				
+				// we only want to know whether it is solvable or not, and whether has multiple solutions 
+				solver.setRecordTranscript(false);
+				solver.setRecordBoardHistory(false);
+				
+				try {
+					solver.Solve();
+				} catch (BoardException e) {
+	                            // should not happen
+	                            throw new ProgramErrorException(e.getMessage());
+	//				e.printStackTrace();
+	//				System.exit(1);
+				}
+				
+				multipleSolutions = solver.isMultipleSolutions();
+				
+				if (solveCache != null)
+					solveCache.put(reducedPuzzle, multipleSolutions ? SolveResult.SOLVED_MULTIPLE_SOLUTIONS : SolveResult.SOLVED,
+							solver.getHighestCapabilityUsed());
 			}
 
-			if ( ! solver.isMultipleSolutions() ) {
+			if ( ! multipleSolutions ) {
 				// reduction of one cell sucessful
 				reductionCount++;
+				reducedSoFar = saved;
 				
 				logger.debug("reset successfully " + cellPosition.row + ", " + cellPosition.col);
 
@@ -370,8 +567,27 @@ public class Sudoku {
 	}
 
 	// fix conflict puzzle by removing known values
+	// null if a limit is reached
 	public Puzzle fixConflictPuzzle(Puzzle puzzle) throws ProgramErrorException {
-		Random random = new Random();
+		Object event = SolverEvents.beginOperation("fix", puzzle);
+		beginOperation();
+		Puzzle fixedPuzzle = null;
+		try {
+			fixedPuzzle = fixConflictPuzzle1(puzzle);
+			return fixedPuzzle;
+		} catch (SolveLimitException e) {
+			handleLimit(e);
+			return null;
+		} finally {
+			endOperation();
+			if (event != null)
+				SolverEvents.endOperation(event, fixedPuzzle, level, null, limitReason, budget);
+		}
+	}
+
+	private Puzzle fixConflictPuzzle1(Puzzle puzzle) throws ProgramErrorException {
+		// the same seed, the same fix
+		Random random = useRandomSeed ? new Random(randomSeed) : new Random();
 		
 		// first step
 		// use sanity check to remove duplicates
@@ -388,42 +604,51 @@ public class Sudoku {
 		} while ( ! sanityCheckPass );
 		
 		// second step
-		// randomly remove cells
+		// remove a clue of a conflict core, until it is solvable
 		
-		// create a known cell list
+		// the cells in a random order, the order the clues are tried in for a core
 		ArrayList<CellPosition> positionList;
 		if (useRandomSeed)
 			positionList = Solver.getRandomCellPositionList(randomSeed);
 		else
 			positionList = Solver.getRandomCellPositionList();
-		for (int i=positionList.size()-1; i>=0; i--) {
-			int row = positionList.get(i).row;
-			int col = positionList.get(i).col;
-			if (!puzzle.isSet(row, col))
-				positionList.remove(i);
-		}
 		
-		// randomly remove cells, until it is solvable
-		Puzzle workPuzzle = new Puzzle(puzzle);
+		Puzzle workPuzzle = board.getPuzzle();
 		
 		// keep a record
 		ArrayList<CellPosition> removedPositions = new ArrayList<CellPosition>();
 		ArrayList<Integer> removedValues = new ArrayList<Integer>(); 
 		
-		while ( isSolvable(workPuzzle) == SolveResult.UNSOLVABLE ) {
+		FastSolver fastSolver = new FastSolver();
+		while (true) {
+			budget.check();
 			
-			int idx = random.nextInt(positionList.size());
+			ArrayList<CellPosition> core = ConflictCore.find(workPuzzle, positionList);
+			if (core == null)
+				break;
 			
-			CellPosition cellPosition = positionList.get( idx );
+			// a clue of the core whose removal makes it solvable, if there is one, else a random one
+			int first = random.nextInt(core.size());
+			CellPosition cellPosition = core.get(first);
+			for (int i=0; i<core.size(); i++) {
+				CellPosition position = core.get((first + i) % core.size());
+				int value = workPuzzle.values[position.row][position.col];
+				workPuzzle.reset(position.row, position.col);
+				fastSolver.setPuzzle(workPuzzle);
+				boolean solvable = fastSolver.countSolutions(1) != 0;
+				workPuzzle.set(position.row, position.col, value);
+				if (solvable) {
+					cellPosition = position;
+					break;
+				}
+			}
 			
 			removedPositions.add(cellPosition);
-			positionList.remove(idx);
-			
 			removedValues.add(workPuzzle.values[cellPosition.row][cellPosition.col]);
 			workPuzzle.reset(cellPosition.row, cellPosition.col);
 		}
 		
-		// the removed values may not contribute to the conflict
+		// a removed value may not contribute to the conflict any more, once a clue of another core is removed
 		// so put back these that does not cause conflict
 		logger.debug("removed cells: " + removedPositions.size());
 		for (int idx = 0; idx<removedPositions.size(); idx++)
@@ -432,11 +657,10 @@ public class Sudoku {
 			workPuzzle.set(cellPosition.row, cellPosition.col, removedValues.get(idx));
 
 			// if not solvable, back out
-			if (isSolvable(workPuzzle) == SolveResult.UNSOLVABLE)
+			fastSolver.setPuzzle(workPuzzle);
+			if (fastSolver.countSolutions(1) == 0)
 				workPuzzle.reset(cellPosition.row, cellPosition.col);
 			else {
-//				System.err.println( "added back: " + (cellPosition.row+1) + ", " 
-//						+ (cellPosition.col+1) + " = " + removedValues.get(idx) );
 				logger.debug( "added back: " + (cellPosition.row+1) + ", " 
 						+ (cellPosition.col+1) + " = " + removedValues.get(idx) );
 			}
@@ -445,9 +669,55 @@ public class Sudoku {
 		return workPuzzle;
 	}
 	
+	private Solver newSolver() {
+		Solver solver;
+		if (usePooledSolver)
+			solver = solverFactory.getPooledSolver();
+		else
+			solver = solverFactory.newSolver();
+		solver.setBudget(budget);
+		return solver;
+	}
+
+	private void beginOperation() {
+		if (operationDepth++ == 0) {
+			budget = solveLimits.newBudget();
+			limitReason = null;
+		}
+	}
+
+	private void endOperation() {
+		operationDepth--;
+	}
+
+	// a limit is handled by the outermost operation, a nested one passes it on
+	private void handleLimit(SolveLimitException e) {
+		if (operationDepth > 1)
+			throw e;
+		limitReason = e.getReason();
+		logger.info(e.getMessage());
+	}
+
+	/**
+	 * stop the operation in progress, it can be called by another thread.
+	 * the operation returns as if a limit is reached, with the reason CANCELLED.
+	 */
+	public void cancel() {
+		SolveBudget budget = this.budget;
+		if (budget != null)
+			budget.cancel();
+	}
+
 	/////////////////////////////////////////////////
 	
-	public ArrayList<String> getTranscript() {
+	/**
+	 * of the last solve, null if none
+	 */
+	public SolveStats getStats() {
+		return solver == null ? null : solver.getStats();
+	}
+
+	public Transcript getTranscript() {
 		return solver.getTranscript();
 	}
 	
@@ -455,7 +725,7 @@ public class Sudoku {
 		return solver.getSolutions();
 	}
 	
-	public ArrayList<Action> getActions() {
+	public List<Action> getActions() {
 		return solver.getActions();
 	}
 	
@@ -463,6 +733,19 @@ public class Sudoku {
 		return solver.getGuessBoards();
 	}
 
+	public int getSolutionCount() {
+		return solver.getSolutionCount();
+	}
+
+	public Puzzle getSolution(int idx) {
+		return solver.getSolution(idx);
+	}
+
+	// null if no guess was made for the solution
+	public Puzzle getGuessPuzzle(int idx) {
+		return solver.getGuessPuzzle(idx);
+	}
+
 	public boolean isFindAllSolutionsLimitExceeded() {
 		return solver.isFindAllSolutionsLimitExceeded();
 	}
@@ -519,7 +802,7 @@ public class Sudoku {
 		this.recordBoardHistory = recordBoardHistory;
 	}
 
-	public ArrayList<Board> getBoardHistory() {
+	public BoardHistory getBoardHistory() {
 		return solver.getBoardHistory();
 	}
 
@@ -543,4 +826,37 @@ public class Sudoku {
 		return solver.getPatternCellLists();
 	}
 
+	public void setSolveCache(SolveCache solveCache) {
+		this.solveCache = solveCache;
+	}
+
+	public SolveCache getSolveCache() {
+		return solveCache;
+	}
+
+	public void setSolverFactory(SolverFactory solverFactory) {
+		this.solverFactory = solverFactory;
+	}
+
+	public void setUsePooledSolver(boolean usePooledSolver) {
+		this.usePooledSolver = usePooledSolver;
+	}
+
+	public void setSolveLimits(SolveLimits solveLimits) {
+		this.solveLimits = solveLimits;
+	}
+
+	public SolveLimits getSolveLimits() {
+		return solveLimits;
+	}
+
+	// null if the last operation was not stopped by a limit
+	public SolveLimits.Reason getLimitReason() {
+		return limitReason;
+	}
+
+	// the nodes and guesses counted in the last operation
+	public SolveBudget getBudget() {
+		return budget;
+	}
 }
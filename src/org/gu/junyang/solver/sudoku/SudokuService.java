@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * a thread safe facade of Sudoku, the results are returned as immutable objects.
+ *
+ * Sudoku keeps the state of the last call, so the service keeps a Sudoku per thread,
+ * which reuses the solver of the thread; everything is copied into the result before returning.
+ *
+ * each call takes SolveLimits, when a limit is reached, the result has the reason, and the partial results.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.gu.junyang.solver.sudoku.Sudoku.SolveResult;
+import org.gu.junyang.utilities.MessagePoster;
+import org.gu.junyang.utilities.ProgramErrorException;
+
+public class SudokuService {
+
+	/**
+	 * immutable options of a solve
+	 */
+	public static class SolveOptions {
+		public static final SolveOptions DEFAULT = new SolveOptions(Solver.HIGHEST_CAPABILITY_LEVELS, false, false, false);
+
+		final int capabilityLevel;
+		final boolean findAllSolutions;
+		final boolean randomSearch;
+		final boolean recordTranscript;
+		final SolveLimits solveLimits;
+
+		public SolveOptions(int capabilityLevel, boolean findAllSolutions, boolean randomSearch, boolean recordTranscript) {
+			this(capabilityLevel, findAllSolutions, randomSearch, recordTranscript, SolveLimits.NONE);
+		}
+
+		public SolveOptions(int capabilityLevel, boolean findAllSolutions, boolean randomSearch, boolean recordTranscript,
+				SolveLimits solveLimits) {
+			this.capabilityLevel = capabilityLevel;
+			this.findAllSolutions = findAllSolutions;
+			this.randomSearch = randomSearch;
+			this.recordTranscript = recordTranscript;
+			this.solveLimits = solveLimits;
+		}
+
+		public int getCapabilityLevel() {
+			return capabilityLevel;
+		}
+
+		public boolean isFindAllSolutions() {
+			return findAllSolutions;
+		}
+
+		public boolean isRandomSearch() {
+			return randomSearch;
+		}
+
+		public boolean isRecordTranscript() {
+			return recordTranscript;
+		}
+
+		public SolveLimits getSolveLimits() {
+			return solveLimits;
+		}
+	}
+
+	/**
+	 * the immutable result of a solve, a count or a rate
+	 * the solutions are only available if solved, or if a limit is reached, the solutions found so far.
+	 */
+	public static class SolveOutcome {
+		final SolveResult solveResult;
+		final int level;
+		final String message;			// for UNSOLVABLE and LIMIT_REACHED
+		final int unknowns;				// for UNSOLVED and LIMIT_REACHED
+		final List<PuzzleKey> solutions;
+		final List<PuzzleKey> guessPuzzles;		// null for a solution not guessed
+		final boolean findAllSolutionsLimitExceeded;
+		final List<String> transcript;
+		final SolveLimits.Reason limitReason;	// null if no limit is reached
+		final SolveStats stats;			// null if not solved here, e.g. rated from the cache; not changed after the solve
+		final SolveBudget budget;		// what is left of the limits after the operation
+
+		SolveOutcome(SolveResult solveResult, int level, String message, int unknowns,
+				List<PuzzleKey> solutions, List<PuzzleKey> guessPuzzles, boolean findAllSolutionsLimitExceeded,
+				List<String> transcript, SolveLimits.Reason limitReason, SolveStats stats, SolveBudget budget) {
+			this.solveResult = solveResult;
+			this.level = level;
+			this.message = message;
+			this.unknowns = unknowns;
+			this.solutions = Collections.unmodifiableList(solutions);
+			this.guessPuzzles = Collections.unmodifiableList(guessPuzzles);
+			this.findAllSolutionsLimitExceeded = findAllSolutionsLimitExceeded;
+			this.transcript = Collections.unmodifiableList(transcript);
+			this.limitReason = limitReason;
+			this.stats = stats;
+			this.budget = budget;
+		}
+
+		public SolveResult getSolveResult() {
+			return solveResult;
+		}
+
+		public boolean isSolved() {
+			return solveResult == SolveResult.SOLVED || solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS;
+		}
+
+		public int getLevel() {
+			return level;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public int getUnknowns() {
+			return unknowns;
+		}
+
+		public int getSolutionCount() {
+			return solutions.size();
+		}
+
+		// a new copy each call
+		public Puzzle getSolution(int idx) {
+			return solutions.get(idx).toPuzzle();
+		}
+
+		// the guessed values of a solution, null if not guessed
+		public Puzzle getGuessPuzzle(int idx) {
+			PuzzleKey key = guessPuzzles.get(idx);
+			return key == null ? null : key.toPuzzle();
+		}
+
+		public List<PuzzleKey> getSolutionKeys() {
+			return solutions;
+		}
+
+		public boolean isFindAllSolutionsLimitExceeded() {
+			return findAllSolutionsLimitExceeded;
+		}
+
+		// empty if not recorded
+		public List<String> getTranscript() {
+			return transcript;
+		}
+
+		public SolveLimits.Reason getLimitReason() {
+			return limitReason;
+		}
+
+		public SolveStats getStats() {
+			return stats;
+		}
+
+		/**
+		 * to go on under the same limits, e.g. for the backbone of the puzzle solved
+		 */
+		public SolveBudget getBudget() {
+			return budget;
+		}
+	}
+
+	/**
+	 * the immutable result of a reduce, a generate or a fix
+	 * if a limit is reached, the puzzle is the partial result, see the operations, or null.
+	 */
+	public static class PuzzleOutcome {
+		final PuzzleKey puzzle;
+		final int level;
+		final int reductionCount;
+		final SolveLimits.Reason limitReason;	// null if no limit is reached
+
+		PuzzleOutcome(PuzzleKey puzzle, int level, int reductionCount, SolveLimits.Reason limitReason) {
+			this.puzzle = puzzle;
+			this.level = level;
+			this.reductionCount = reductionCount;
+			this.limitReason = limitReason;
+		}
+
+		// a new copy each call
+		public Puzzle getPuzzle() {
+			return puzzle == null ? null : puzzle.toPuzzle();
+		}
+
+		public SolveLimits.Reason getLimitReason() {
+			return limitReason;
+		}
+
+		public PuzzleKey getPuzzleKey() {
+			return puzzle;
+		}
+
+		// for generate
+		public int getLevel() {
+			return level;
+		}
+
+		// for reduce
+		public int getReductionCount() {
+			return reductionCount;
+		}
+	}
+
+	static final MessagePoster noMessagePoster = new MessagePoster() {
+		public void PostMessage(String message) {
+		}
+	};
+
+	final SolverFactory solverFactory;
+
+	final SolveCache solveCache;
+
+	final ThreadLocal<Sudoku> sudoku = new ThreadLocal<Sudoku>() {
+		@Override
+		protected Sudoku initialValue() {
+			Sudoku sudoku = new Sudoku();
+			sudoku.setSolverFactory(solverFactory);
+			sudoku.setUsePooledSolver(true);
+			sudoku.setSolveCache(solveCache);
+			return sudoku;
+		}
+	};
+
+	///////////////////////////////////
+
+	public SudokuService() {
+		this(SolverFactory.newInstance(), null);
+	}
+
+	/**
+	 * @param solveCache	used by rate and reduce, may be null
+	 */
+	public SudokuService(SolveCache solveCache) {
+		this(SolverFactory.newInstance(), solveCache);
+	}
+
+	public SudokuService(SolverFactory solverFactory, SolveCache solveCache) {
+		this.solverFactory = solverFactory;
+		this.solveCache = solveCache;
+	}
+
+	public SolveOutcome solve(Puzzle puzzle) {
+		return solve(puzzle, SolveOptions.DEFAULT);
+	}
+
+	public SolveOutcome solve(Puzzle puzzle, SolveOptions options) {
+		Sudoku sudoku = this.sudoku.get();
+
+		sudoku.setSolvingCapabilityLevel(options.capabilityLevel);
+		sudoku.setFindAllSolutions(options.findAllSolutions);
+		sudoku.setRandomSearch(options.randomSearch);
+		sudoku.setRecordTranscript(options.recordTranscript);
+		sudoku.setRecordBoardHistory(false);
+		sudoku.setSolveLimits(options.solveLimits);
+
+		SolveResult solveResult = sudoku.solve(puzzle);
+
+		return toSolveOutcome(sudoku, solveResult, options.recordTranscript);
+	}
+
+	/**
+	 * find all the solutions, up to Solver.FIND_ALL_SOLUTIONS_LIMIT
+	 */
+	public SolveOutcome count(Puzzle puzzle, SolveLimits solveLimits) {
+		return solve(puzzle, new SolveOptions(Solver.HIGHEST_CAPABILITY_LEVELS, true, false, false, solveLimits));
+	}
+
+	/**
+	 * the solve result and the level, without the solutions
+	 */
+	public SolveOutcome rate(Puzzle puzzle, SolveLimits solveLimits) throws ProgramErrorException {
+		Sudoku sudoku = this.sudoku.get();
+		sudoku.setSolveLimits(solveLimits);
+
+		SolveResult solveResult = sudoku.isSolvable(puzzle);
+
+		List<PuzzleKey> none = Collections.emptyList();
+		List<String> noTranscript = Collections.emptyList();
+		return new SolveOutcome(solveResult, isRated(solveResult) ? sudoku.getLevel() : 0, null, 0,
+				none, none, false, noTranscript, sudoku.getLimitReason(), null, sudoku.getBudget());
+	}
+
+	/**
+	 * @param randomSeed	null for not seeded
+	 * @return	null if the puzzle is unsolvable or has multiple solutions;
+	 * 	if a limit is reached, the best reduction so far
+	 */
+	public PuzzleOutcome reduce(Puzzle puzzle, Long randomSeed, SolveLimits solveLimits) throws ProgramErrorException {
+		Sudoku sudoku = this.sudoku.get();
+		setRandomSeed(sudoku, randomSeed);
+		sudoku.setSolveLimits(solveLimits);
+
+		Board board = sudoku.reduce(puzzle);
+		if (board == null && sudoku.getLimitReason() == null)
+			return null;
+
+		return new PuzzleOutcome(toKey(board), 0, sudoku.getReductionCount(), sudoku.getLimitReason());
+	}
+
+	/**
+	 * @param targetCapability	null for any level
+	 * @param randomSeed	null for not seeded
+	 * @return	if a limit is reached, the last puzzle generated, not of the target capability, or none
+	 */
+	public PuzzleOutcome generate(Integer targetCapability, Long randomSeed, SolveLimits solveLimits) throws ProgramErrorException {
+		Sudoku sudoku = this.sudoku.get();
+		setRandomSeed(sudoku, randomSeed);
+		sudoku.setSolveLimits(solveLimits);
+		sudoku.setRandomSearch(true);
+		sudoku.setRecordTranscript(false);
+		sudoku.setRecordBoardHistory(false);
+
+		Board board;
+		if (targetCapability != null)
+			board = sudoku.generatePuzzleWithCapability(targetCapability, noMessagePoster);
+		else
+			board = sudoku.generatePuzzle(noMessagePoster);
+
+		return new PuzzleOutcome(toKey(board), board == null ? 0 : sudoku.getLevel(), 0, sudoku.getLimitReason());
+	}
+
+	/**
+	 * @param randomSeed	null for not seeded
+	 * @return	if a limit is reached, no puzzle
+	 */
+	public PuzzleOutcome fix(Puzzle puzzle, Long randomSeed, SolveLimits solveLimits) throws ProgramErrorException {
+		Sudoku sudoku = this.sudoku.get();
+		setRandomSeed(sudoku, randomSeed);
+		sudoku.setSolveLimits(solveLimits);
+
+		Puzzle fixedPuzzle = sudoku.fixConflictPuzzle(puzzle);
+
+		return new PuzzleOutcome(fixedPuzzle == null ? null : PuzzleKey.of(fixedPuzzle), 0, 0, sudoku.getLimitReason());
+	}
+
+	///////////////////////////////////
+
+	private static PuzzleKey toKey(Board board) {
+		return board == null ? null : PuzzleKey.of(board.getPuzzle());
+	}
+
+	private static boolean isRated(SolveResult solveResult) {
+		return solveResult == SolveResult.SOLVED || solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS;
+	}
+
+	private static void setRandomSeed(Sudoku sudoku, Long randomSeed) {
+		sudoku.setUseRandomSeed(randomSeed != null);
+		if (randomSeed != null)
+			sudoku.setRandomSeed(randomSeed);
+	}
+
+	private static SolveOutcome toSolveOutcome(Sudoku sudoku, SolveResult solveResult, boolean recordTranscript) {
+		ArrayList<PuzzleKey> solutions = new ArrayList<PuzzleKey>();
+		ArrayList<PuzzleKey> guessPuzzles = new ArrayList<PuzzleKey>();
+
+		String message = null;
+		int unknowns = 0;
+		if (solveResult == SolveResult.UNSOLVABLE) {
+			message = sudoku.getMessage();
+		} else if (solveResult == SolveResult.UNSOLVED) {
+			unknowns = sudoku.getBoard().unknowns;
+		} else {
+			// solved, or the solutions found before a limit is reached
+			for (int i=0; i<sudoku.getSolutionCount(); i++) {
+				solutions.add(PuzzleKey.of(sudoku.getSolution(i)));
+				Puzzle guessPuzzle = sudoku.getGuessPuzzle(i);
+				guessPuzzles.add(guessPuzzle == null ? null : PuzzleKey.of(guessPuzzle));
+			}
+		}
+
+		List<String> transcript;
+		if (recordTranscript)
+			transcript = new ArrayList<String>(sudoku.getTranscript());
+		else
+			transcript = Collections.emptyList();
+
+		if (solveResult == SolveResult.LIMIT_REACHED) {
+			message = sudoku.getMessage();
+			unknowns = sudoku.getBoard().unknowns;
+		}
+
+		return new SolveOutcome(solveResult, solveResult == SolveResult.UNSOLVABLE ? 0 : sudoku.getLevel(), message, unknowns,
+				solutions, guessPuzzles, sudoku.isFindAllSolutionsLimitExceeded(), transcript, sudoku.getLimitReason(),
+				sudoku.getStats(), sudoku.getBudget());
+	}
+
+}
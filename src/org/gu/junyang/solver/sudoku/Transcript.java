@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the transcript of a solve, recorded as events, an int each, and made text only when an entry is got.
+ *
+ * an event: the kind in bits 0-2, the label in bits 3-6, the cell index in bits 7-13,
+ * and the value, or the mask of the candidates removed, in bits 14-22.
+ * e.g. REMOVE_CANDIDATE, LIMITED_DESTINATION, [3][4], 5 is "LimitedDestination (4): [3][4] remove 5".
+ *
+ * the events added are pending, until committed at the end of a solver step, when the board history is added;
+ * as a list, the transcript is the committed entries only.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gu.junyang.solver.sudoku.Solver.Action;
+
+public class Transcript extends AbstractList<String> {
+
+	// the kinds
+	static final int SET_VALUE = 0;				// label: [r][c]=v
+	static final int REMOVE_CANDIDATE = 1;		// label: [r][c] remove v
+	static final int REMOVE_CANDIDATES = 2;		// label: [r][c] remove v1 v2 ...
+	static final int TRYING = 3;				// label: trying [r][c]=v
+	static final int BACK_OUT = 4;				// label: back out [r][c]=v
+
+	// the labels
+	static final int ELIMINATE_CANDIDATE = 0;
+	static final int ELIMINATE_CANDIDATES = 1;
+	static final int SINGLE_DESTINATION = 2;
+	static final int LIMITED_CANDIDATES = 3;
+	static final int LIMITED_DESTINATION = 4;
+	static final int DUAL_ROW_LIMITED_DESTINATION = 5;
+	static final int DUAL_COL_LIMITED_DESTINATION = 6;
+	static final int XWING_ROW = 7;
+	static final int XWING_COL = 8;
+	static final int TRIAL_AND_ERROR = 9;
+	static final int TRIAL_AND_ERROR_BACK_OUT = 10;
+
+	static final String [] LABELS = {
+		"EliminateCandidate (1)",
+		"EliminateCandidates (1)",
+		"SingleDestination (2)",
+		"LimitedCandidates (3)",
+		"LimitedDestination (4)",
+		"DualRowLimitedDestination (5)",
+		"DualColLimitedDestination (5)",
+		"XWing-row(6)",
+		"XWing-col(6)",
+		"TrialAndError (7)",
+		"TrialAndError"
+	};
+
+	static final int LABEL_SHIFT = 3;
+	static final int CELL_SHIFT = 7;
+	static final int VALUE_SHIFT = 14;
+
+	int [] events = new int[64];
+
+	// of all the events, and of the committed ones
+	int count = 0;
+	int committed = 0;
+
+	///////////////////////////////////
+
+	/**
+	 * add a pending event
+	 * @param value	the value, or for REMOVE_CANDIDATES, the mask of the candidates, bit i-1 for candidate i
+	 */
+	void add(int kind, int label, int row, int col, int value) {
+		if (count == events.length)
+			events = Arrays.copyOf(events, count * 2);
+		events[count++] = kind | label << LABEL_SHIFT | (row * 9 + col) << CELL_SHIFT | value << VALUE_SHIFT;
+	}
+
+	void addRemoveCandidates(int label, int row, int col, Candidates candidates) {
+		int mask = 0;
+		for (int candidate : candidates)
+			mask |= 1 << (candidate - 1);
+		add(REMOVE_CANDIDATES, label, row, col, mask);
+	}
+
+	/**
+	 * take back the last pending event
+	 */
+	void removeLast() {
+		if (count > committed)
+			count--;
+	}
+
+	void commit() {
+		committed = count;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		count = 0;
+		committed = 0;
+		modCount++;
+	}
+
+	/**
+	 * a transcript of the committed events of a range, e.g. those of a step
+	 */
+	Transcript copy(int from, int to) {
+		Transcript transcript = new Transcript();
+		transcript.events = Arrays.copyOfRange(events, from, Math.max(to, from + 1));
+		transcript.count = to - from;
+		transcript.committed = to - from;
+		return transcript;
+	}
+
+	///////////////////////////////////
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= committed)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + committed);
+		return toString(events[index]);
+	}
+
+	@Override
+	public int size() {
+		return committed;
+	}
+
+	public Action getAction(int index) {
+		if (index < 0 || index >= committed)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + committed);
+		int kind = events[index] & ((1 << LABEL_SHIFT) - 1);
+		return kind == REMOVE_CANDIDATE || kind == REMOVE_CANDIDATES ? Action.REMOVE_CANDIDATE : Action.SET_VALUE;
+	}
+
+	/**
+	 * the actions of the entries, a view
+	 */
+	public List<Action> getActions() {
+		return new AbstractList<Action>() {
+			@Override
+			public Action get(int index) {
+				return getAction(index);
+			}
+
+			@Override
+			public int size() {
+				return committed;
+			}
+		};
+	}
+
+	///////////////////////////////////
+
+	static String toString(int event) {
+		int kind = event & ((1 << LABEL_SHIFT) - 1);
+		String label = LABELS[(event >>> LABEL_SHIFT) & 0xf];
+		int cell = (event >>> CELL_SHIFT) & 0x7f;
+		int value = event >>> VALUE_SHIFT;
+		String position = "[" + (cell / 9 + 1) + "][" + (cell % 9 + 1) + "]";
+
+		switch (kind) {
+		case SET_VALUE:
+			return label + ": " + position + "=" + value;
+		case REMOVE_CANDIDATE:
+			return label + ": " + position + " remove " + value;
+		case REMOVE_CANDIDATES:
+			// as Candidates.toString()
+			StringBuilder sb = new StringBuilder(label).append(": ").append(position).append(" remove ");
+			boolean first = true;
+			for (int candidate=1; candidate<=9; candidate++) {
+				if ((value & (1 << (candidate - 1))) == 0)
+					continue;
+				if (!first)
+					sb.append(' ');
+				first = false;
+				sb.append(candidate);
+			}
+			return sb.toString();
+		case TRYING:
+			return label + ": trying " + position + "=" + value;
+		case BACK_OUT:
+			return label + ": back out " + position + "=" + value;
+		default:
+			throw new IllegalStateException("unknown transcript event kind: " + kind);
+		}
+	}
+
+}
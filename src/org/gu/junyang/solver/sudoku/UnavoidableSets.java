@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * an index of the small unavoidable sets of a solution grid, for telling a puzzle of it has multiple solutions
+ * without solving it.
+ *
+ * an unavoidable set is a set of cells whose values can be rearranged into another solution, the rest unchanged,
+ * so a puzzle of a unique solution has a clue in each of them. a clue set that misses one has more solutions.
+ * the converse is not true: a clue set hitting all the sets here may still have more solutions, so it is solved.
+ *
+ * the sets are found for each 2 and 3 values: the cells of the other values are kept, the cells of these values
+ * are searched for the other arrangements, each of MIN_SIZE to MAX_SIZE cells different from the grid.
+ * the sets containing a smaller one are dropped, as hitting the smaller one hits them.
+ *
+ * a set is a bitboard, the cells 0-63 in a low long and 64-80 in a high long, and so is a clue set,
+ * so a check is 2 ands per set.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+public class UnavoidableSets {
+
+	static final int MIN_SIZE = 4;
+	static final int MAX_SIZE = 12;
+
+	final int [] solution;
+
+	// the sets, smallest first
+	long [] lows;
+	long [] highs;
+
+	///////////////////////////////////
+
+	private UnavoidableSets(int [] solution) {
+		this.solution = solution;
+	}
+
+	/**
+	 * @param solution	the values of the grid, by cell index
+	 */
+	public static UnavoidableSets of(int [] solution) {
+		UnavoidableSets unavoidableSets = new UnavoidableSets(solution);
+		unavoidableSets.find();
+		return unavoidableSets;
+	}
+
+	/**
+	 * whether a clue set hits all the sets; if not, a puzzle of the clues has more than one solution
+	 */
+	public boolean isHitBy(long low, long high) {
+		for (int i=0; i<lows.length; i++) {
+			if ((lows[i] & low) == 0 && (highs[i] & high) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * the clue set of the known cells of a board, for isHitBy(), the low long
+	 */
+	public static long getLow(Board board) {
+		long low = 0;
+		for (int i=0; i<64; i++) {
+			if (board.sudokuCells[i / 9][i % 9].known)
+				low |= 1L << i;
+		}
+		return low;
+	}
+
+	/**
+	 * the high long, see getLow()
+	 */
+	public static long getHigh(Board board) {
+		long high = 0;
+		for (int i=64; i<Board.TOTAL_CELLS; i++) {
+			if (board.sudokuCells[i / 9][i % 9].known)
+				high |= 1L << (i - 64);
+		}
+		return high;
+	}
+
+	public int size() {
+		return lows.length;
+	}
+
+	/**
+	 * the cells of a set, by cell index
+	 */
+	public int [] getCells(int index) {
+		int [] cells = new int[Long.bitCount(lows[index]) + Long.bitCount(highs[index])];
+		int count = 0;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if (i < 64 ? (lows[index] & (1L << i)) != 0 : (highs[index] & (1L << (i - 64))) != 0)
+				cells[count++] = i;
+		}
+		return cells;
+	}
+
+	///////////////////////////////////
+
+	// the search of the arrangements of some values
+	int [] freeCells;
+	int freeCount;
+	int valueMask;
+	final int [] values = new int[Board.TOTAL_CELLS];
+	final int [] rowUsed = new int[9];
+	final int [] colUsed = new int[9];
+	final int [] blockUsed = new int[9];
+	final ArrayList<long []> found = new ArrayList<long []>();
+
+	private void find() {
+		freeCells = new int[Board.TOTAL_CELLS];
+		for (int a=1; a<=9; a++) {
+			for (int b=a+1; b<=9; b++) {
+				findArrangements(1 << a | 1 << b);
+				for (int c=b+1; c<=9; c++)
+					findArrangements(1 << a | 1 << b | 1 << c);
+			}
+		}
+
+		// the smaller first, so a set containing another comes after it
+		Collections.sort(found, new Comparator<long []>() {
+			public int compare(long [] x, long [] y) {
+				return (Long.bitCount(x[0]) + Long.bitCount(x[1])) - (Long.bitCount(y[0]) + Long.bitCount(y[1]));
+			}
+		});
+		ArrayList<long []> minimal = new ArrayList<long []>();
+		for (long [] set : found) {
+			boolean containsAnother = false;
+			for (long [] smaller : minimal) {
+				if ((smaller[0] & ~set[0]) == 0 && (smaller[1] & ~set[1]) == 0) {
+					containsAnother = true;
+					break;
+				}
+			}
+			if (!containsAnother)
+				minimal.add(set);
+		}
+		found.clear();
+
+		lows = new long[minimal.size()];
+		highs = new long[minimal.size()];
+		for (int i=0; i<minimal.size(); i++) {
+			lows[i] = minimal.get(i)[0];
+			highs[i] = minimal.get(i)[1];
+		}
+	}
+
+	// the other arrangements of the values of the mask, bit v for the value v, the rest of the grid kept
+	private void findArrangements(int valueMask) {
+		this.valueMask = valueMask;
+		freeCount = 0;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if ((valueMask & (1 << solution[i])) != 0)
+				freeCells[freeCount++] = i;
+		}
+		Arrays.fill(rowUsed, 0);
+		Arrays.fill(colUsed, 0);
+		Arrays.fill(blockUsed, 0);
+		search(0, 0);
+	}
+
+	private void search(int k, int different) {
+		if (k == freeCount) {
+			if (different >= MIN_SIZE)
+				found.add(differentCells());
+			return;
+		}
+
+		int cell = freeCells[k];
+		int row = cell / 9;
+		int col = cell % 9;
+		int block = row / 3 * 3 + col / 3;
+		int allowed = valueMask & ~(rowUsed[row] | colUsed[col] | blockUsed[block]);
+		for (int value=1; value<=9; value++) {
+			if ((allowed & (1 << value)) == 0)
+				continue;
+			int nextDifferent = different + (value != solution[cell] ? 1 : 0);
+			if (nextDifferent > MAX_SIZE)
+				continue;
+			values[cell] = value;
+			rowUsed[row] |= 1 << value;
+			colUsed[col] |= 1 << value;
+			blockUsed[block] |= 1 << value;
+			search(k + 1, nextDifferent);
+			rowUsed[row] &= ~(1 << value);
+			colUsed[col] &= ~(1 << value);
+			blockUsed[block] &= ~(1 << value);
+		}
+	}
+
+	private long [] differentCells() {
+		long [] set = new long[2];
+		for (int k=0; k<freeCount; k++) {
+			int cell = freeCells[k];
+			if (values[cell] != solution[cell])
+				set[cell >> 6] |= 1L << (cell & 63);
+		}
+		return set;
+	}
+
+}
@@ -29,7 +29,9 @@ import java.util.ArrayList;
 import java.util.Scanner;
 import javax.swing.JLabel;
 import org.apache.log4j.Logger;
+import org.gu.junyang.solver.sudoku.BadMoves;
 import org.gu.junyang.solver.sudoku.Board;
+import org.gu.junyang.solver.sudoku.BoardHistory;
 import org.gu.junyang.solver.sudoku.Cell;
 import org.gu.junyang.solver.sudoku.CellList;
 import org.gu.junyang.solver.sudoku.Board.BoardException;
@@ -62,7 +64,7 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
     /**
      * a history to track activity
      */
-    private ArrayList<Board> boardHistory;
+    private BoardHistory boardHistory;
 
     private int boardHistoryIdx=-1;			// the curent index
 
@@ -74,6 +76,10 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
 
     private boolean instantSanityCheck;
 
+    // the full solvability check after a sanity check passed
+    private boolean instantSolvabilityCheck;
+    private SolvabilityService solvabilityService;
+
     // a reference to a display label
     private JLabel boardHistoryIdxLabel;
 
@@ -225,7 +231,7 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
                 return;
 
             // initialize
-            boardHistory = new ArrayList<Board>();
+            boardHistory = new BoardHistory();
             setBoardHistoryIdx(-1);
         } else {
             boardHistory=null;
@@ -251,13 +257,9 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
 
     	setBoardHistoryIdx(i);
 
+        // rebuilt from the history, so it is a new board, and it can be changed if editable
         Board newBoard = boardHistory.get(boardHistoryIdx);
 
-        if (editable) {
-            // board is mutable, so make a new copy
-            newBoard = new Board(newBoard);
-        }
-
     	setBoard( newBoard );
 
     	return true;
@@ -281,8 +283,13 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
             // passed sanity check
         	if (board.getUnknowns()==0) {
         		setStatus(Status.SOLVED);
-        	} else
+        		if (solvabilityService != null)
+        			solvabilityService.cancel();
+        	} else {
         		setStatus(Status.OK);
+        		if (instantSolvabilityCheck)
+        			solvabilityService.check(board, showCandidates);
+        	}
 
             return true;
 
@@ -290,6 +297,8 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
 //            java.util.logging.Logger.getLogger(CellPanel.class.getName()).log(Level.SEVERE, null, ex);
         	
         	setStatus(Status.UNSOLVABLE);
+        	if (solvabilityService != null)
+        		solvabilityService.cancel();
             
             // highlight conflict
         	if (board.getDuplicateCells().size()==2) {
@@ -343,9 +352,9 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
 
         ArrayList<CellPosition> diffPositions;
         if (showCandidates) {
-            diffPositions = boardHistory.get(boardHistoryIdx - 1).diff(boardHistory.get(boardHistoryIdx), true);
+            diffPositions = boardHistory.getChangedCells(boardHistoryIdx, true);
         } else {
-            diffPositions = boardHistory.get(boardHistoryIdx - 1).diff(boardHistory.get(boardHistoryIdx), false);
+            diffPositions = boardHistory.getChangedCells(boardHistoryIdx, false);
         }
 
 //            System.err.println("differences: " + diffPositions.size());
@@ -383,11 +392,11 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
 //        }
 
         // remove all the boards after the current insert position
-        ArrayListUtils.removeTailStartingAt(boardHistory, boardHistoryIdx + 1);
+        boardHistory.removeTailStartingAt(boardHistoryIdx + 1);
         if (patternCellLists != null)
         	ArrayListUtils.removeTailStartingAt(patternCellLists, boardHistoryIdx + 1);
         
-        boardHistory.add( new Board(board) );
+        boardHistory.add( board );
         if (patternCellLists!=null)
         	patternCellLists.add(patternCellList);
         
@@ -398,8 +407,8 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
         if (boardHistorySizeLimit != 0) {
             while (boardHistory.size() > boardHistorySizeLimit) {
                 logger.info("input board history exceeds limit, oldest boards removed.");
+                boardHistory.removeHead(10);
                 for (int i = 0; i < 10; i++) {
-                    boardHistory.remove(0);
                     if (patternCellLists!=null)
                     	patternCellLists.remove(0);
                     setBoardHistoryIdx(boardHistoryIdx-1);
@@ -420,7 +429,24 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
         this.instantSanityCheck = instantSanityCheck;
     }
 
-	public void setBoardHistory(ArrayList<Board> boardHistory,
+    /**
+     * check whether the board is solvable, in the background, after each sanity check passed;
+     * it needs the instant sanity check on
+     */
+    public void setInstantSolvabilityCheck(boolean instantSolvabilityCheck) {
+        // the service is kept when turned off, with the solution it knows
+        if (solvabilityService == null)
+            solvabilityService = new SolvabilityService(this);
+        else if (!instantSolvabilityCheck)
+            solvabilityService.cancel();
+        this.instantSolvabilityCheck = instantSolvabilityCheck;
+
+        // the status of the current board, with or without the check
+        if (board != null)
+            sanityCheckBoard();
+    }
+
+	public void setBoardHistory(BoardHistory boardHistory,
 			ArrayList<CellList> patternCellLists) {
         this.boardHistory = boardHistory;
         this.patternCellLists = patternCellLists;
@@ -438,10 +464,13 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
     }
 
     void reset(int row, int col) {
+        badMove = null;
         board.reset(row, col);
     }
 
     void setValue(int row, int col, int val) {
+        // looked up before the board changes, the bad moves are of the board before the move
+        badMove = isBadMove(row, col, val) ? new CellPosition(row, col) : null;
         board.setValue(row, col, val);
     }
 
@@ -485,6 +514,11 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
         			parent.showMessageDialog("Success!");
         	}
         }
+
+        if (badMove != null) {
+        	setWarn(badMove.row, badMove.col);
+        	badMove = null;
+        }
     }
 
     public void setShowDialogUponSolved(boolean showDialogUponSolved) {
@@ -501,8 +535,27 @@ public class BoardPanel extends javax.swing.JPanel implements Printable {
     // full solvability test result
     boolean currentBoardSolvable;
     
+    // the bad moves of the current board, null if not known (yet)
+    BadMoves badMoves;
+
+    // the cell of the last value set, if it was a bad move
+    private CellPosition badMove;
+
+    public void setBadMoves(BadMoves badMoves) {
+        this.badMoves = badMoves;
+    }
+
+    /**
+     * whether setting the value is known to be a bad move, in the current board
+     */
+    public boolean isBadMove(int row, int col, int value) {
+        return badMoves != null && badMoves.isBad(row, col, value);
+    }
+
     public void setCurrentBoardSolvable(boolean currentBoardSolvable) {
         this.currentBoardSolvable = currentBoardSolvable;
+        // the sanity check status stands, only a board that passed it can be found not solvable
+        setStatus(currentBoardSolvable ? Status.OK : Status.UNSOLVABLE);
     }
 
     /////////////////////////////
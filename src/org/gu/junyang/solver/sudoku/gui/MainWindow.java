@@ -37,6 +37,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.logging.Level;
@@ -46,14 +47,20 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
+import org.gu.junyang.solver.sudoku.Backbone;
 import org.gu.junyang.solver.sudoku.Board;
+import org.gu.junyang.solver.sudoku.Board.BoardException;
+import org.gu.junyang.solver.sudoku.ClueFixer;
+import org.gu.junyang.solver.sudoku.BoardHistory;
+import org.gu.junyang.solver.sudoku.DeductionIterator;
+import org.gu.junyang.solver.sudoku.DeductionStep;
+import org.gu.junyang.solver.sudoku.FastSolver;
 import org.gu.junyang.solver.sudoku.Puzzle;
 import org.gu.junyang.solver.sudoku.SolverFactory;
 import org.gu.junyang.solver.sudoku.SolverNonGreedy;
 import org.gu.junyang.solver.sudoku.Puzzle.UnexpectedEndOfInputException;
 import org.gu.junyang.solver.sudoku.Sudoku;
 import org.gu.junyang.solver.sudoku.Sudoku.SolveResult;
-import org.gu.junyang.utilities.ArrayListUtils;
 import org.gu.junyang.utilities.ExceptionUtils;
 import org.gu.junyang.utilities.MessagePoster;
 import org.gu.junyang.utilities.ProgramErrorException;
@@ -608,7 +615,7 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
     }//GEN-LAST:event_solverRandomSearchCheckBoxActionPerformed
 
     private void instantSolvabilityCheckCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_instantSolvabilityCheckCheckBoxActionPerformed
-        instantSolvabilityCheck = instantSolvabilityCheckCheckBox.isSelected();
+        setInstantSolvabilityCheck(instantSolvabilityCheckCheckBox.isSelected());
     }//GEN-LAST:event_instantSolvabilityCheckCheckBoxActionPerformed
 
     private void aboutMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_aboutMenuItemActionPerformed
@@ -695,9 +702,11 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
 
     private void checkSolvabilityMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_checkSolvabilityMenuItemActionPerformed
         SolveResult solveResult;
+        Sudoku sudoku = new Sudoku();
+        sudoku.setSolveCache(SolvabilityService.solveCache);
         if (showCandidates)
             try {
-            solveResult = new Sudoku().isSolvable(getSelectedBoard());
+            solveResult = sudoku.isSolvable(getSelectedBoard());
         } catch (ProgramErrorException ex) {
             showProgramErrorExceptionDialog(ex);
 //            java.util.logging.Logger.getLogger(MainWindow.class.getName()).log(Level.SEVERE, null, ex);
@@ -705,7 +714,7 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
         }
         else
             try {
-            solveResult = new Sudoku().isSolvable(getSelectedBoard().getPuzzle());
+            solveResult = sudoku.isSolvable(getSelectedBoard().getPuzzle());
         } catch (ProgramErrorException ex) {
             showProgramErrorExceptionDialog(ex);
 //            java.util.logging.Logger.getLogger(MainWindow.class.getName()).log(Level.SEVERE, null, ex);
@@ -796,6 +805,7 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
         inputPanel.setParent(this);
 
         inputPanel.setInstantSanityCheck(true);
+        inputPanel.setInstantSolvabilityCheck(instantSolvabilityCheck);
 
         inputPanel.setEnableBoardHistory(true);
         inputPanel.setEnablePatternCellLists();
@@ -841,9 +851,8 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
         saveAndShowWaitCursor();
 
         // use the non-greedy solver for better progress showing
-        SolverFactory.setSolverClassName(SolverFactory.SolverNonGreedyClassName);
         Sudoku sudoku = new Sudoku();
-        SolverFactory.setSolverClassName(SolverFactory.SolverDefaultClassName);
+        sudoku.setSolverFactory(SolverFactory.newInstance(SolverFactory.SolverNonGreedyClassName));
 
         sudoku.setRecordTranscript(true);
         sudoku.setRecordBoardHistory(true);
@@ -876,25 +885,29 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
 
             // check multiple puzzle
             if ( solveResult == SolveResult.SOLVED_MULTIPLE_SOLUTIONS ) {
-                if (!generateFromInput)
-                    message += NL + "WARNING: Multiple solutions found. See the fixed tab for corrected puzzle (input + guessed).";
+                if (!generateFromInput) {
+                    message += NL + "WARNING: Multiple solutions found. See the fixed tab for corrected puzzle (input + the fewest values added).";
+
+                    // the cells of the same value in all the solutions, of the board solved
+                    Backbone backbone = Backbone.of(FastSolver.getMasks(inputPanel.getBoard(), showCandidates));
+                    message += NL + backbone.getFreeCount() + " cells are of different values in different solutions, "
+                            + (backbone.getFixedCount() - (Board.TOTAL_CELLS - inputPanel.getBoard().getUnknowns()))
+                            + " cells not given are of the same value in all.";
+                }
 
                 // prepare guess board
                 Board guessBoard = new Board();
                 guessBoard.read(new Scanner(sudoku.getGuessBoards().get(0)));
                 guessPanel.setNewBoard(guessBoard);
 
-                // prepare generated board
-                Puzzle puzzle = inputPanel.getBoard().getPuzzle();
-                try {
-                    puzzle.combine(new Puzzle(sudoku.getGuessBoards().get(0)));
-                } catch (UnexpectedEndOfInputException ex) {
-                    java.util.logging.Logger.getLogger(MainWindow.class.getName()).log(Level.SEVERE, null, ex);
+                // prepare generated board, the input with the fewest values for a unique solution, not all the guessed ones
+                ClueFixer clueFixer = ClueFixer.of(inputPanel.getBoard().getPuzzle());
+                if (clueFixer == null) {
                     showMessageDialog("program error.");
                     return;
                 }
 
-                fixedPanel.setNewBoard(new Board(puzzle));
+                fixedPanel.setNewBoard(new Board(clueFixer.getFixedPuzzle()));
                 fixedPanelSet = true;
             }
 
@@ -906,8 +919,8 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
             transcriptSolutionIndex = sudoku.getSolutionTranscriptIndexes().get(0);
         }
 
-        ArrayList<Board> boardHistory = sudoku.getBoardHistory();
-        ArrayListUtils.removeTailStartingAt(boardHistory, boardHistorySolutionIndex+1);
+        BoardHistory boardHistory = sudoku.getBoardHistory();
+        boardHistory.removeTailStartingAt(boardHistorySolutionIndex+1);
         solutionPanel.setBoardHistory(boardHistory, sudoku.getPatternCellLists());
         
 //        System.err.println("board history solution at: " + boardHistorySolutionIndex );
@@ -1271,6 +1284,7 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
 
 	public void setInstantSolvabilityCheck(boolean instantSolvabilityCheck) {
 		this.instantSolvabilityCheck = instantSolvabilityCheck;
+		inputPanel.setInstantSolvabilityCheck(instantSolvabilityCheck);
 	}
     
     private void hintOneMove() {
@@ -1278,33 +1292,37 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
     	
         saveAndShowWaitCursor();
 
-        Board board = new Board( inputPanel.getBoard() );
-
-        // use the non-greedy solver for better progress showing
-        SolverFactory.setSolverClassName(SolverFactory.SolverNonGreedyClassName);
-        Sudoku sudoku = new Sudoku();
-        SolverFactory.setSolverClassName(SolverFactory.SolverDefaultClassName);
-        
-        sudoku.setRecordTranscript(true);
-        sudoku.setRecordBoardHistory(true);
-        sudoku.setRandomSearch(solverRandomSearch);				// use random search
-        sudoku.setFindAllSolutions(false);
-        sudoku.solve(board);
+        // a step of the non-greedy solver, computed on its own, instead of a whole solve
+        DeductionIterator deductions;
+        try {
+            deductions = new DeductionIterator(inputPanel.getBoard());
+        } catch (BoardException e) {
+            restoreCursor();
+            showMessageDialog("conflict in puzzle detected - " + e.getMessage());
+            return;
+        }
 
-        if (sudoku.getBoardHistory().size()<2) {
-        	showMessageDialog("unable to find a move");
+        if (!deductions.hasNext()) {
         	restoreCursor();
+        	showMessageDialog("unable to find a move - " + deductions.getMessage());
         	return;
         }
         
-        // find the first setvalue
-        int transcriptSolutionIndex = sudoku.getBoardHistoryTranscriptIdxs().get(1);
+        DeductionStep step = deductions.next();
 
         // set the transcript
-        setTranscriptAndActions(sudoku.getTranscript(), sudoku.getBoardHistoryTranscriptIdxs(), transcriptSolutionIndex);
+        JTextArea textArea = transcriptWindow.getjTextArea1();
+        textArea.setText("");
+        List<String> transcript = step.getTranscript();
+        for (int i = 0; i < transcript.size(); i++) {
+            if (i == transcript.size() - 1)
+                textArea.append("1: " + transcript.get(i) + NL);
+            else
+                textArea.append("1-" + (i + 1) + ": " + transcript.get(i) + NL);
+        }
 
         // set the board
-        inputPanel.setNewBoard(sudoku.getBoardHistory().get(1), sudoku.getPatternCellLists().get(1));
+        inputPanel.setNewBoard(deductions.getBoard(), step.getPatternCells());
         
         restoreCursor();
         
@@ -1312,7 +1330,7 @@ public class MainWindow extends javax.swing.JFrame implements MessagePoster {
 //        setVisible(true);
     }
 
-    private void setTranscriptAndActions(ArrayList<String> transcript, ArrayList<Integer> boardHistoryTranscriptIdxs, int transcriptSolutionIndex) {
+    private void setTranscriptAndActions(List<String> transcript, ArrayList<Integer> boardHistoryTranscriptIdxs, int transcriptSolutionIndex) {
         int cnt = 1;
         JTextArea textArea = transcriptWindow.getjTextArea1();
         textArea.setText("");
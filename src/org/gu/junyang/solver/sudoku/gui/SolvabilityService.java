@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * the instant solvability check of a board panel, in the background, one check at a time,
+ * with the bad moves of the board, see BadMoves, for the board panel to look a move up when it is made.
+ *
+ * a check of a board cancels the one before, which is stale, and its result is never reported.
+ * the last solution found is kept: if every cell of the new board still allows its value in that solution,
+ * e.g. the user entered a correct value, the board is solvable, with no search;
+ * and if the solution is unique and the board only narrows the board it was found for, it is still unique,
+ * so the bad moves are the other candidates, with no search either.
+ * otherwise the FastSolver searches for the solutions, on a background thread,
+ * and the candidates are probed by the probe workers, one per processor, if there is more than one solution.
+ *
+ * the result is reported to the board panel on the event dispatch thread.
+ *
+ */
+
+package org.gu.junyang.solver.sudoku.gui;
+
+import java.awt.EventQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+import org.gu.junyang.solver.sudoku.BadMoves;
+import org.gu.junyang.solver.sudoku.Board;
+import org.gu.junyang.solver.sudoku.FastSolver;
+import org.gu.junyang.solver.sudoku.SolveCache;
+
+public class SolvabilityService {
+
+	Logger logger = Logger.getLogger(this.getClass());
+
+	// shared by the checks of the menu, the same board is often checked again after an undo or a re-entry
+	static final SolveCache solveCache = new SolveCache();
+
+	final BoardPanel boardPanel;
+
+	final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "solvability check");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	static final int probeThreadCount = Runtime.getRuntime().availableProcessors();
+
+	static final ExecutorService probeWorkers = Executors.newFixedThreadPool(probeThreadCount, new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "bad move probe");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// the check running or queued, if any
+	Future<?> pending;
+
+	// a check is reported only if no check has been asked for since, only touched on the event dispatch thread
+	int generation = 0;
+
+	// the values of the last solution found, by cell index; null if none
+	int [] knownSolution;
+
+	// if the solution is unique, the masks of the board it was found for, else null
+	int [] knownSolutionMasks;
+
+	///////////////////////////////////
+
+	public SolvabilityService(BoardPanel boardPanel) {
+		this.boardPanel = boardPanel;
+	}
+
+	/**
+	 * check the board, called on the event dispatch thread
+	 * @param useCandidates	if false, only the known values of the board are checked, as a puzzle
+	 */
+	public void check(Board board, boolean useCandidates) {
+		cancel();
+		final int checkGeneration = generation;
+
+		final int [] masks = FastSolver.getMasks(board, useCandidates);
+
+		boardPanel.setBadMoves(null);
+
+		if (agrees(masks, knownSolution)) {
+			boardPanel.setCurrentBoardSolvable(true);
+			if (narrows(masks, knownSolutionMasks)) {
+				boardPanel.setBadMoves(BadMoves.ofSolution(masks, knownSolution));
+				return;
+			}
+		}
+
+		pending = executor.submit(new Runnable() {
+			public void run() {
+				final BadMoves badMoves;
+				try {
+					badMoves = BadMoves.find(masks, probeWorkers, probeThreadCount);
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					logger.error("bad moves probe failed: " + e.getMessage());
+					return;
+				}
+
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						if (checkGeneration != generation)
+							return;
+						if (badMoves.getSolution() != null) {
+							knownSolution = badMoves.getSolution();
+							knownSolutionMasks = badMoves.getSolutionCount() == 1 ? masks : null;
+						}
+						boardPanel.setCurrentBoardSolvable(badMoves.getSolutionCount() != 0);
+						boardPanel.setBadMoves(badMoves);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * cancel the check running, if any, e.g. when the check is turned off
+	 */
+	public void cancel() {
+		generation++;
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	///////////////////////////////////
+
+	// whether each cell allows no more candidates than it did in the board of the masks
+	private static boolean narrows(int [] masks, int [] boardMasks) {
+		if (boardMasks == null)
+			return false;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if ((masks[i] & ~boardMasks[i]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	// whether each cell allows its value of the solution
+	private static boolean agrees(int [] masks, int [] solution) {
+		if (solution == null)
+			return false;
+		for (int i=0; i<Board.TOTAL_CELLS; i++) {
+			if ((masks[i] & (1 << (solution[i] - 1))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+}
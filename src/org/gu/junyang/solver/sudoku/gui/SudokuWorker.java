@@ -40,6 +40,7 @@ public class SudokuWorker extends SwingWorker<Board, String> implements MessageP
     Integer level;
     MessagePoster messagePoster;
     MainWindow mainWindow;
+    Sudoku sudoku = new Sudoku();
 
     public SudokuWorker(boolean random, long seed, Integer level, MessagePoster messagePoster, MainWindow mainWindow) {
         this.random = random;
@@ -51,7 +52,6 @@ public class SudokuWorker extends SwingWorker<Board, String> implements MessageP
 
     @Override
     protected Board doInBackground() {
-        Sudoku sudoku = new Sudoku();
         sudoku.setRandomSearch(true);	// when generate, always use randomSearch
         sudoku.setUseRandomSeed(!random);
         if (!random) {
@@ -86,7 +86,8 @@ public class SudokuWorker extends SwingWorker<Board, String> implements MessageP
         publish(message);
         if (isCancelled()) {
             publish("Cancelled.");
-            throw new Error("cancelled");   // just to stop the thread
+            // the solver also stops on the interrupt of cancel(true), this is in case it was not interrupted
+            sudoku.cancel();
         }
     }
 
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gu.junyang.utilities;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * a small benchmark harness, in the spirit of JMH, without its dependencies.
+ *
+ * each benchmark is run for a number of warmup iterations, then measurement iterations, of a fixed time each.
+ * an operation is timed on its own, so the setup of each operation is not measured.
+ * reported per benchmark:
+ * 	throughput, in operations per second, with the standard deviation over the iterations
+ * 	the average time of an operation
+ * 	the bytes allocated per operation, and the allocation rate, by the thread allocation counter
+ * 	the garbage collections during the measurement
+ *
+ * unlike JMH, the benchmarks run in one JVM, one after the other, so the order can matter.
+ * the results of the operations are folded into a sink, so they are not optimized away.
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * a benchmark operation
+	 */
+	public static abstract class Task {
+		/**
+		 * before each operation, not measured
+		 */
+		public void setup() throws Exception {
+		}
+
+		/**
+		 * @return	anything computed, so the operation is not optimized away
+		 */
+		public abstract Object run() throws Exception;
+	}
+
+	/**
+	 * the measurement of a benchmark
+	 */
+	public static class Result {
+		final String name;
+		final long operations;
+		final double opsPerSecond;
+		final double opsPerSecondError;		// standard deviation over the iterations
+		final double nanosPerOp;
+		final double bytesPerOp;			// -1 if the allocation counter is not supported
+		final long gcCount;
+		final long gcMillis;
+
+		Result(String name, long operations, double opsPerSecond, double opsPerSecondError, double nanosPerOp,
+				double bytesPerOp, long gcCount, long gcMillis) {
+			this.name = name;
+			this.operations = operations;
+			this.opsPerSecond = opsPerSecond;
+			this.opsPerSecondError = opsPerSecondError;
+			this.nanosPerOp = nanosPerOp;
+			this.bytesPerOp = bytesPerOp;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getOperations() {
+			return operations;
+		}
+
+		public double getOpsPerSecond() {
+			return opsPerSecond;
+		}
+
+		public double getOpsPerSecondError() {
+			return opsPerSecondError;
+		}
+
+		public double getNanosPerOp() {
+			return nanosPerOp;
+		}
+
+		public double getBytesPerOp() {
+			return bytesPerOp;
+		}
+
+		// in MB per second of the operation time
+		public double getAllocationRate() {
+			if (bytesPerOp < 0)
+				return -1;
+			return bytesPerOp * opsPerSecond / (1024 * 1024);
+		}
+
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		public long getGcMillis() {
+			return gcMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-48s %12.1f +- %9.1f ops/s %13.0f ns/op %11.0f B/op %9.1f MB/s  gc: %d (%d ms)",
+					name, opsPerSecond, opsPerSecondError, nanosPerOp, bytesPerOp, getAllocationRate(), gcCount, gcMillis);
+		}
+	}
+
+	static class Benchmark {
+		final String name;
+		final Task task;
+
+		Benchmark(String name, Task task) {
+			this.name = name;
+			this.task = task;
+		}
+	}
+
+	int warmupIterations = 3;
+	int iterations = 5;
+	long iterationMillis = 1000;
+
+	ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+	final com.sun.management.ThreadMXBean allocationCounter;
+
+	// the results of the operations end up here
+	public static volatile int sink;
+
+	///////////////////////////////////
+
+	public BenchmarkRunner() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+			allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+			allocationCounter.setThreadAllocatedMemoryEnabled(true);
+		} else
+			allocationCounter = null;
+	}
+
+	/**
+	 * the bytes allocated by the current thread so far, -1 if not supported
+	 */
+	public long getAllocatedBytes() {
+		if (allocationCounter == null)
+			return -1;
+		return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public void add(String name, Task task) {
+		benchmarks.add(new Benchmark(name, task));
+	}
+
+	/**
+	 * run the benchmarks of names matching the filter, printing the results as they are done
+	 * @param filter	a regular expression found in the names, null for all
+	 * @param out	null for quiet
+	 */
+	public List<Result> run(String filter, PrintStream out) throws Exception {
+		Pattern pattern = filter == null ? null : Pattern.compile(filter);
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (Benchmark benchmark : benchmarks) {
+			if (pattern != null && !pattern.matcher(benchmark.name).find())
+				continue;
+			Result result = run(benchmark);
+			results.add(result);
+			if (out != null) {
+				out.println(result);
+				out.flush();
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * the names of the benchmarks, in the order added
+	 */
+	public List<String> getNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for (Benchmark benchmark : benchmarks)
+			names.add(benchmark.name);
+		return names;
+	}
+
+	///////////////////////////////////
+
+	private Result run(Benchmark benchmark) throws Exception {
+		for (int i=0; i<warmupIterations; i++)
+			iterate(benchmark.task, new long[3]);
+
+		double [] opsPerSecond = new double[iterations];
+		long operations = 0;
+		long nanos = 0;
+		long bytes = 0;
+		long gcCount = -getGcCount();
+		long gcMillis = -getGcMillis();
+		for (int i=0; i<iterations; i++) {
+			long [] measured = new long[3];
+			iterate(benchmark.task, measured);
+			opsPerSecond[i] = measured[0] * 1e9 / Math.max(measured[1], 1);
+			operations += measured[0];
+			nanos += measured[1];
+			bytes += measured[2];
+		}
+		gcCount += getGcCount();
+		gcMillis += getGcMillis();
+
+		double mean = 0;
+		for (double ops : opsPerSecond)
+			mean += ops;
+		mean /= iterations;
+		double variance = 0;
+		for (double ops : opsPerSecond)
+			variance += (ops - mean) * (ops - mean);
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+		return new Result(benchmark.name, operations, mean, error, (double) nanos / Math.max(operations, 1),
+				allocationCounter == null ? -1 : (double) bytes / Math.max(operations, 1), gcCount, gcMillis);
+	}
+
+	/**
+	 * run operations for an iteration time
+	 * @param measured	the operations, the nanoseconds of the operations, and the bytes allocated by them
+	 */
+	private void iterate(Task task, long [] measured) throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long end = System.nanoTime() + iterationMillis * 1000000L;
+		int hash = 0;
+		do {
+			task.setup();
+
+			long allocated = allocationCounter == null ? 0 : allocationCounter.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			Object result = task.run();
+			long stop = System.nanoTime();
+			if (allocationCounter != null)
+				measured[2] += allocationCounter.getThreadAllocatedBytes(threadId) - allocated;
+
+			measured[0]++;
+			measured[1] += stop - start;
+			if (result != null)
+				hash += result.hashCode();
+		} while (System.nanoTime() - end < 0);
+		sink += hash;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(gc.getCollectionCount(), 0);
+		return count;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(gc.getCollectionTime(), 0);
+		return millis;
+	}
+
+	///////////////////////////////////
+
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public void setIterationMillis(long iterationMillis) {
+		this.iterationMillis = iterationMillis;
+	}
+
+}
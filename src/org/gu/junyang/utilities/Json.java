@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gu.junyang.utilities;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a minimal JSON reader and writer, enough for a line based protocol.
+ *
+ * objects are read into LinkedHashMap, arrays into ArrayList,
+ * numbers into Long if integral, otherwise Double.
+ */
+public class Json {
+
+    public static class ParseException extends Exception {
+
+        /**
+         *
+         */
+        private static final long serialVersionUID = 7046442948254641126L;
+
+        public ParseException(String msg) {
+            super(msg);
+        }
+    }
+
+    final String text;
+    int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    static public Object parse(String text) throws ParseException {
+        Json json = new Json(text);
+        Object value = json.readValue();
+        json.skipWhitespace();
+        if (json.pos != text.length())
+            throw json.error("unexpected trailing characters");
+        return value;
+    }
+
+    static public String toJson(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static public void write(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            quote(sb, (String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value.toString());
+        } else if (value instanceof Map) {
+            sb.append('{');
+            Iterator<Map.Entry<Object, Object>> it = ((Map<Object, Object>) value).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Object, Object> entry = it.next();
+                quote(sb, entry.getKey().toString());
+                sb.append(':');
+                write(sb, entry.getValue());
+                if (it.hasNext())
+                    sb.append(',');
+            }
+            sb.append('}');
+        } else if (value instanceof Iterable) {
+            sb.append('[');
+            Iterator<Object> it = ((Iterable<Object>) value).iterator();
+            while (it.hasNext()) {
+                write(sb, it.next());
+                if (it.hasNext())
+                    sb.append(',');
+            }
+            sb.append(']');
+        } else {
+            quote(sb, value.toString());
+        }
+    }
+
+    static public void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20)
+                    sb.append(String.format("\\u%04x", (int) c));
+                else
+                    sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    ///////////////////////////////////////////
+
+    private ParseException error(String msg) {
+        return new ParseException(msg + " at position " + pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private char next() throws ParseException {
+        if (pos >= text.length())
+            throw error("unexpected end of input");
+        return text.charAt(pos++);
+    }
+
+    private void expect(String word) throws ParseException {
+        if (!text.startsWith(word, pos))
+            throw error("expect " + word);
+        pos += word.length();
+    }
+
+    private Object readValue() throws ParseException {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw error("unexpected end of input");
+
+        char c = text.charAt(pos);
+        switch (c) {
+        case '{':
+            return readObject();
+        case '[':
+            return readArray();
+        case '"':
+            return readString();
+        case 't':
+            expect("true");
+            return Boolean.TRUE;
+        case 'f':
+            expect("false");
+            return Boolean.FALSE;
+        case 'n':
+            expect("null");
+            return null;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9'))
+                return readNumber();
+            throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() throws ParseException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        pos++;
+        skipWhitespace();
+        if (pos < text.length() && text.charAt(pos) == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            if (pos >= text.length() || text.charAt(pos) != '"')
+                throw error("expect a member name");
+            String name = readString();
+            skipWhitespace();
+            if (next() != ':')
+                throw error("expect ':'");
+            map.put(name, readValue());
+            skipWhitespace();
+            char c = next();
+            if (c == '}')
+                return map;
+            if (c != ',')
+                throw error("expect ',' or '}'");
+        }
+    }
+
+    private List<Object> readArray() throws ParseException {
+        List<Object> list = new ArrayList<Object>();
+        pos++;
+        skipWhitespace();
+        if (pos < text.length() && text.charAt(pos) == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            list.add(readValue());
+            skipWhitespace();
+            char c = next();
+            if (c == ']')
+                return list;
+            if (c != ',')
+                throw error("expect ',' or ']'");
+        }
+    }
+
+    private String readString() throws ParseException {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            char c = next();
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = next();
+            switch (c) {
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                if (pos + 4 > text.length())
+                    throw error("unexpected end of input");
+                try {
+                    sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                } catch (NumberFormatException e) {
+                    throw error("bad unicode escape");
+                }
+                pos += 4;
+                break;
+            default:
+                // '"', '\\' and '/'
+                sb.append(c);
+            }
+        }
+    }
+
+    private Number readNumber() throws ParseException {
+        int start = pos;
+        boolean integral = true;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E')
+                integral = false;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+                break;
+            pos++;
+        }
+        String s = text.substring(start, pos);
+        try {
+            if (integral)
+                return Long.valueOf(s);
+            return Double.valueOf(s);
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("bad number " + s);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011 Junyang Gu <mikejyg@gmail.com>
+ *
+ * This file is part of iSudokuSolver.
+ *
+ * iSudokuSolver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * iSudokuSolver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with iSudokuSolver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gu.junyang.utilities;
+
+/**
+ * a histogram of latencies, log bucketed in the way of HdrHistogram, for the percentiles of many recordings.
+ *
+ * the values below 2^SUB_BUCKET_BITS have a bucket each, above that each power of 2 range is split into
+ * 2^SUB_BUCKET_BITS linear buckets, so a value is kept to within 1/128 of it, at any magnitude.
+ * a recording is a bucket increment, with no allocation; the buckets are a fixed array of about 57 KB.
+ *
+ * not thread safe, the recordings of threads can be added up though.
+ *
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 7;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// the linear buckets, then the split ranges up to 2^63
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	final long [] counts = new long[BUCKETS];
+
+	long count;
+	long sum;
+	long min = Long.MAX_VALUE;
+	long max;
+
+	///////////////////////////////////
+
+	/**
+	 * @param value	e.g. nanoseconds, a negative one is recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts[bucketIndex(value)]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	public void add(LatencyHistogram o) {
+		for (int i=0; i<BUCKETS; i++)
+			counts[i] += o.counts[i];
+		count += o.count;
+		sum += o.sum;
+		min = Math.min(min, o.min);
+		max = Math.max(max, o.max);
+	}
+
+	/**
+	 * the value at a percentile, by the nearest rank;
+	 * the highest value of the bucket, so it is not below the recorded value, but it is never above the max
+	 * @param percentile	e.g. 99.9
+	 * @return	0 if nothing is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * count);
+		rank = Math.min(Math.max(rank, 1), count);
+
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highestValue(i), max);
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	///////////////////////////////////
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		// the highest bit, at least SUB_BUCKET_BITS, and the SUB_BUCKET_BITS bits below it
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}